@@ -14,6 +14,7 @@ plugins {
     id("com.gradle.plugin-publish") version "0.15.0"
     id("com.github.hierynomus.license") version "0.16.1"
     id("com.github.johnrengelman.shadow") version "7.0.0"
+    id("me.champeau.jmh") version "0.6.6"
 }
 
 group = "org.gradle"
@@ -32,6 +33,9 @@ dependencies {
     val asmVersion = "9.2"
     plugin("org.ow2.asm:asm:${asmVersion}")
 
+    // for the worker side of retrying in the test worker, which is loaded by the tests
+    compileOnly("org.testng:testng:7.4.0")
+
     testImplementation(gradleTestKit())
     testImplementation(localGroovy())
     testImplementation("org.spockframework:spock-core:2.0-groovy-3.0")
@@ -39,6 +43,8 @@ dependencies {
     testImplementation("net.sourceforge.nekohtml:nekohtml:1.9.22")
     testImplementation("org.ow2.asm:asm:${asmVersion}")
 
+    jmh("org.ow2.asm:asm:${asmVersion}")
+
     codenarc("org.codenarc:CodeNarc:2.1.0")
 }
 
@@ -148,6 +154,11 @@ tasks.withType<Sign>().configureEach {
     enabled = System.getenv("CI") != null
 }
 
+jmh {
+    // allocation rates are as relevant as throughput for the code on the test event path
+    profilers.add("gc")
+}
+
 tasks.withType<Test>().configureEach {
     maxParallelForks = 4
     useJUnitPlatform()
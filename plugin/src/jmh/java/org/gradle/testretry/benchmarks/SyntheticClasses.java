@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.benchmarks;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates class files, class directories and jars for benchmarks.
+ */
+public final class SyntheticClasses {
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     * A public class with the given internal name and super class, with members added by the given action.
+     */
+    public static byte[] generate(String internalName, String superName, Consumer<ClassWriter> members) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, internalName, null, superName, null);
+        members.accept(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    public static byte[] generate(String internalName, String superName) {
+        return generate(internalName, superName, writer -> {
+        });
+    }
+
+    /**
+     * An annotation type with the given internal name, optionally annotated with {@code @Inherited}.
+     */
+    public static byte[] annotationType(String internalName, boolean inherited) {
+        ClassWriter writer = new ClassWriter(0);
+        int access = Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_ANNOTATION;
+        writer.visit(Opcodes.V1_8, access, internalName, null, "java/lang/Object", new String[]{"java/lang/annotation/Annotation"});
+        if (inherited) {
+            writer.visitAnnotation("Ljava/lang/annotation/Inherited;", true).visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes the given class files, keyed by internal name, into a directory.
+     */
+    public static void writeClassesDir(File dir, Map<String, byte[]> classes) {
+        try {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                Path classFile = dir.toPath().resolve(entry.getKey() + ".class");
+                Files.createDirectories(classFile.getParent());
+                Files.write(classFile, entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the given class files, keyed by internal name, into a jar.
+     */
+    public static void writeJar(File jar, Map<String, byte[]> classes) {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static File createTempDir(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix).toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void deleteRecursively(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
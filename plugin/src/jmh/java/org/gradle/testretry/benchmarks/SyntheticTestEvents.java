@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.benchmarks;
+
+import org.gradle.api.internal.tasks.testing.DefaultTestClassDescriptor;
+import org.gradle.api.internal.tasks.testing.DefaultTestDescriptor;
+import org.gradle.api.internal.tasks.testing.DefaultTestMethodDescriptor;
+import org.gradle.api.internal.tasks.testing.DefaultTestOutputEvent;
+import org.gradle.api.internal.tasks.testing.DefaultTestSuiteDescriptor;
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestFailure;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.api.tasks.testing.TestResult.ResultType;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pre-generated stream of test events, shaped like the events a test worker reports for a test task.
+ * <p>
+ * All events are created up front, so that replaying them into a {@link TestResultProcessor}
+ * only measures the processor.
+ */
+public final class SyntheticTestEvents {
+
+    public enum Shape {
+        /**
+         * Classes of test methods that all pass and write a line of output each.
+         */
+        PASSING,
+        /**
+         * Classes of test methods where every other method fails.
+         */
+        FAILURE_HEAVY,
+        /**
+         * Classes of test factories, each reporting a tree of dynamic tests where every tenth test fails.
+         */
+        DYNAMIC
+    }
+
+    private static final long TIMESTAMP = 1_000_000L;
+    private static final int DYNAMIC_TESTS_PER_FACTORY = 10;
+
+    private final List<Event> events;
+    private final int failures;
+
+    private SyntheticTestEvents(List<Event> events, int failures) {
+        this.events = events;
+        this.failures = failures;
+    }
+
+    /**
+     * Generates the events of a test task running the given number of classes with the given number of tests each.
+     */
+    public static SyntheticTestEvents generate(Shape shape, int classes, int testsPerClass) {
+        Generator generator = new Generator();
+        Object rootId = generator.suite("Gradle Test Run :test", null);
+        Object executorId = generator.suite("Gradle Test Executor 1", rootId);
+        for (int c = 0; c < classes; c++) {
+            String className = "org.acme.p" + c % 50 + ".Synthetic" + c + "Test";
+            Object classId = generator.started(new DefaultTestClassDescriptor(generator.nextId(), className), executorId);
+            switch (shape) {
+                case PASSING:
+                    for (int m = 0; m < testsPerClass; m++) {
+                        generator.test(new DefaultTestMethodDescriptor(generator.nextId(), className, "test" + m), classId, false);
+                    }
+                    break;
+                case FAILURE_HEAVY:
+                    for (int m = 0; m < testsPerClass; m++) {
+                        generator.test(new DefaultTestMethodDescriptor(generator.nextId(), className, "test" + m), classId, m % 2 == 0);
+                    }
+                    break;
+                case DYNAMIC:
+                    for (int f = 0; f < testsPerClass / DYNAMIC_TESTS_PER_FACTORY; f++) {
+                        Object factoryId = generator.started(new DefaultTestDescriptor(generator.nextId(), className, "factory" + f + "()"), classId);
+                        for (int d = 0; d < DYNAMIC_TESTS_PER_FACTORY; d++) {
+                            String name = "factory" + f + "()[" + (d + 1) + "]";
+                            generator.test(new DefaultTestDescriptor(generator.nextId(), className, name), factoryId, d % 10 == 0);
+                        }
+                        generator.completed(factoryId, ResultType.SUCCESS);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(shape.name());
+            }
+            generator.completed(classId, ResultType.SUCCESS);
+        }
+        generator.completed(executorId, ResultType.SUCCESS);
+        generator.completed(rootId, ResultType.SUCCESS);
+        return new SyntheticTestEvents(generator.events, generator.failures);
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public void replay(TestResultProcessor processor) {
+        replay(processor, null);
+    }
+
+    /**
+     * Replays the events, reporting failures through {@code failure(Object, Throwable)} of Gradle versions before 7.6 if given.
+     */
+    public void replay(TestResultProcessor processor, @Nullable LegacyFailureReporter legacyFailureReporter) {
+        for (Event event : events) {
+            event.replay(processor, legacyFailureReporter);
+        }
+    }
+
+    public interface LegacyFailureReporter {
+
+        void failure(Object testId, Throwable throwable);
+
+    }
+
+    private interface Event {
+
+        void replay(TestResultProcessor processor, @Nullable LegacyFailureReporter legacyFailureReporter);
+
+    }
+
+    private static final class Generator {
+
+        private final List<Event> events = new ArrayList<>();
+        private final Throwable throwable = new AssertionError("expected:<1> but was:<2>");
+        private final TestFailure failure = TestFailure.fromTestFrameworkFailure(throwable);
+        private long id;
+        private int failures;
+
+        private Object nextId() {
+            return ++id;
+        }
+
+        private Object suite(String name, Object parentId) {
+            return started(new DefaultTestSuiteDescriptor(nextId(), name), parentId);
+        }
+
+        private Object started(TestDescriptorInternal descriptor, Object parentId) {
+            TestStartEvent event = new TestStartEvent(TIMESTAMP, parentId);
+            events.add((processor, legacy) -> processor.started(descriptor, event));
+            return descriptor.getId();
+        }
+
+        private void test(TestDescriptorInternal descriptor, Object parentId, boolean fails) {
+            Object testId = started(descriptor, parentId);
+            TestOutputEvent output = new DefaultTestOutputEvent(TestOutputEvent.Destination.StdOut, "output of " + descriptor.getName() + "\n");
+            events.add((processor, legacy) -> processor.output(testId, output));
+            if (fails) {
+                failures++;
+                events.add((processor, legacy) -> {
+                    if (legacy == null) {
+                        processor.failure(testId, failure);
+                    } else {
+                        legacy.failure(testId, throwable);
+                    }
+                });
+                completed(testId, ResultType.FAILURE);
+            } else {
+                completed(testId, ResultType.SUCCESS);
+            }
+        }
+
+        private void completed(Object testId, ResultType resultType) {
+            TestCompleteEvent event = new TestCompleteEvent(TIMESTAMP, resultType);
+            events.add((processor, legacy) -> processor.completed(testId, event));
+        }
+    }
+}
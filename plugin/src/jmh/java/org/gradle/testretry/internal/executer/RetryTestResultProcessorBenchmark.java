@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+import org.gradle.api.internal.tasks.testing.TestFramework;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestFailure;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.testretry.benchmarks.SyntheticTestEvents;
+import org.gradle.testretry.internal.executer.framework.TestFrameworkStrategy;
+import org.gradle.testretry.internal.filter.RetryFilter;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a full round of synthetic test events through a {@link RetryTestResultProcessor} into a no-op delegate.
+ * <p>
+ * The {@code events} counter reports the event throughput, run with {@code -prof gc} for the allocation rate per event.
+ * Failures are reported through the {@code TestFailure} based API of Gradle 7.6 and later,
+ * or through the {@code Throwable} based API of earlier versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RetryTestResultProcessorBenchmark {
+
+    @Param({"PASSING", "FAILURE_HEAVY", "DYNAMIC"})
+    SyntheticTestEvents.Shape shape;
+
+    @Param({"NEW", "LEGACY"})
+    FailureApi failureApi;
+
+    @Param({"2000"})
+    int classes;
+
+    @Param({"100"})
+    int testsPerClass;
+
+    private SyntheticTestEvents events;
+    private RetryFilter filter;
+    private TestsReader testsReader;
+
+    @Setup(Level.Trial)
+    public void generateEvents() {
+        events = SyntheticTestEvents.generate(shape, classes, testsPerClass);
+        filter = new RetryFilter(
+            className -> Collections.emptySet(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList()
+        );
+        testsReader = new TestsReader(Collections.emptySet(), Collections.emptyList());
+    }
+
+    @Benchmark
+    public RoundResult processRound(EventCounter counter) {
+        NoOpTestResultProcessor delegate = new NoOpTestResultProcessor();
+        RetryTestResultProcessor processor = new RetryTestResultProcessor(NoOpTestFrameworkStrategy.INSTANCE, filter, testsReader, delegate, new RetryForkPlanner(1), new TestFilterCostModel(), 0);
+        events.replay(processor, failureApi == FailureApi.LEGACY ? processor::failure : null);
+        counter.events += events.size();
+        counter.forwarded += delegate.events;
+        return processor.getResult();
+    }
+
+    public enum FailureApi {
+        NEW, LEGACY
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EventCounter {
+
+        public long events;
+        public long forwarded;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+            forwarded = 0;
+        }
+    }
+
+    // public, as the legacy failure method is looked up on the delegate's class
+    public static final class NoOpTestResultProcessor implements TestResultProcessor {
+
+        private long events;
+
+        @Override
+        public void started(TestDescriptorInternal test, TestStartEvent event) {
+            events++;
+        }
+
+        @Override
+        public void completed(Object testId, TestCompleteEvent event) {
+            events++;
+        }
+
+        @Override
+        public void output(Object testId, TestOutputEvent event) {
+            events++;
+        }
+
+        @Override
+        public void failure(Object testId, TestFailure result) {
+            events++;
+        }
+
+        public void failure(Object testId, Throwable throwable) {
+            events++;
+        }
+    }
+
+    private enum NoOpTestFrameworkStrategy implements TestFrameworkStrategy {
+
+        INSTANCE;
+
+        @Override
+        public boolean isLifecycleFailureTest(TestsReader testsReader, String className, String testName) {
+            return false;
+        }
+
+        @Override
+        public TestFramework createRetrying(TestFrameworkTemplate template, TestNames failedTests) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TestFramework createCopy(TestFrameworkTemplate template) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
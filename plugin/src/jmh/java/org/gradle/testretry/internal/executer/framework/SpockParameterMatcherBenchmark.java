@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer.framework;
+
+import org.gradle.testretry.benchmarks.SyntheticClasses;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches failed iterations of unrolled features to the features of a Spock specification with many features.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpockParameterMatcherBenchmark {
+
+    private static final String SPEC = "acme/BigSpec";
+
+    @Param({"100", "500", "1000"})
+    int features;
+
+    @Param({"1", "50"})
+    int failures;
+
+    private File dir;
+    private TestsReader testsReader;
+    private ClassMetadata spec;
+    private Set<String> failedTestNames;
+
+    @Setup(Level.Trial)
+    public void createSpec() {
+        byte[] spec = SyntheticClasses.generate(SPEC, "spock/lang/Specification", writer -> {
+            for (int i = 0; i < features; i++) {
+                MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "$spock_feature_0_" + i, "()V", null, null);
+                AnnotationVisitor featureMetadata = method.visitAnnotation("Lorg/spockframework/runtime/model/FeatureMetadata;", true);
+                featureMetadata.visit("line", i);
+                featureMetadata.visit("name", "feature " + i + " with #param and #other.name");
+                featureMetadata.visit("ordinal", i);
+                featureMetadata.visitEnd();
+                method.visitEnd();
+            }
+        });
+
+        dir = SyntheticClasses.createTempDir("spock-parameter-matcher-benchmark");
+        SyntheticClasses.writeClassesDir(dir, Collections.singletonMap(SPEC, spec));
+        testsReader = new TestsReader(Collections.singleton(dir), Collections.emptyList());
+        this.spec = testsReader.readClassMetadata(SPEC.replace('/', '.')).orElseThrow(IllegalStateException::new);
+
+        failedTestNames = new LinkedHashSet<>();
+        for (int i = 0; i < failures; i++) {
+            int feature = (int) ((long) i * features / failures);
+            failedTestNames.add("feature " + feature + " with " + i + " and value " + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSpec() {
+        testsReader.close();
+        SyntheticClasses.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> match() {
+        return SpockParameterMatcher.match(testsReader, spec, failedTestNames);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer.framework;
+
+import org.gradle.testretry.benchmarks.SyntheticClasses;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the TestNG {@code dependsOnMethods} chain of a method in the middle of a large dependency graph.
+ * <p>
+ * Each method depends on its predecessor and on the method at half its index, so the graph is both deep and wide.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestNgDependencyChainBenchmark {
+
+    private static final String TEST_CLASS = "acme/DependentTest";
+
+    @Param({"100", "1000", "10000"})
+    int methods;
+
+    private File dir;
+    private TestsReader testsReader;
+    private ClassMetadata testClass;
+    private String method;
+
+    @Setup(Level.Trial)
+    public void createTestClass() {
+        byte[] testClass = SyntheticClasses.generate(TEST_CLASS, "java/lang/Object", writer -> {
+            for (int i = 0; i < methods; i++) {
+                MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "test" + i, "()V", null, null);
+                AnnotationVisitor test = method.visitAnnotation("Lorg/testng/annotations/Test;", true);
+                AnnotationVisitor dependsOn = test.visitArray("dependsOnMethods");
+                if (i > 0) {
+                    dependsOn.visit(null, "test" + (i - 1));
+                    dependsOn.visit(null, "test" + i / 2);
+                }
+                dependsOn.visitEnd();
+                test.visitEnd();
+                method.visitEnd();
+            }
+        });
+
+        dir = SyntheticClasses.createTempDir("testng-dependency-chain-benchmark");
+        SyntheticClasses.writeClassesDir(dir, Collections.singletonMap(TEST_CLASS, testClass));
+        testsReader = new TestsReader(Collections.singleton(dir), Collections.emptyList());
+        this.testClass = testsReader.readClassMetadata(TEST_CLASS.replace('/', '.')).orElseThrow(IllegalStateException::new);
+        method = "test" + methods / 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTestClass() {
+        testsReader.close();
+        SyntheticClasses.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Set<String> dependencyChain() {
+        return TestNgTestFrameworkStrategy.dependencyChain(testClass, method);
+    }
+}
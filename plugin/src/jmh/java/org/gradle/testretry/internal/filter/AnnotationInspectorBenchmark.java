@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.filter;
+
+import org.gradle.testretry.benchmarks.SyntheticClasses;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the annotations of a test class at the bottom of a deep class hierarchy,
+ * where every level declares inherited and non inherited annotations.
+ * <p>
+ * {@code getClassAnnotations} measures the hierarchy walk with all class metadata already read,
+ * {@code readAndGetClassAnnotations} includes reading every class of the hierarchy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnnotationInspectorBenchmark {
+
+    private static final int ANNOTATION_TYPES = 10;
+
+    @Param({"10", "100", "1000"})
+    int depth;
+
+    private File dir;
+    private String leafClassName;
+    private TestsReader warmReader;
+
+    @Setup(Level.Trial)
+    public void createHierarchy() {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (int i = 0; i < ANNOTATION_TYPES; i++) {
+            classes.put("acme/Inherited" + i, SyntheticClasses.annotationType("acme/Inherited" + i, true));
+            classes.put("acme/Plain" + i, SyntheticClasses.annotationType("acme/Plain" + i, false));
+        }
+
+        String superName = "java/lang/Object";
+        for (int i = 0; i < depth; i++) {
+            String internalName = "acme/Level" + i + "Test";
+            int annotation = i % ANNOTATION_TYPES;
+            classes.put(internalName, SyntheticClasses.generate(internalName, superName, writer -> {
+                writer.visitAnnotation("Lacme/Inherited" + annotation + ";", true).visitEnd();
+                writer.visitAnnotation("Lacme/Plain" + annotation + ";", true).visitEnd();
+            }));
+            superName = internalName;
+        }
+        leafClassName = superName.replace('/', '.');
+
+        dir = SyntheticClasses.createTempDir("annotation-inspector-benchmark");
+        SyntheticClasses.writeClassesDir(dir, classes);
+
+        warmReader = reader();
+        new AnnotationInspectorImpl(warmReader).getClassAnnotations(leafClassName);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHierarchy() {
+        warmReader.close();
+        SyntheticClasses.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Set<String> getClassAnnotations() {
+        return new AnnotationInspectorImpl(warmReader).getClassAnnotations(leafClassName);
+    }
+
+    @Benchmark
+    public Set<String> readAndGetClassAnnotations() {
+        try (TestsReader reader = reader()) {
+            return new AnnotationInspectorImpl(reader).getClassAnnotations(leafClassName);
+        }
+    }
+
+    private TestsReader reader() {
+        return new TestsReader(Collections.singleton(dir), Collections.emptyList());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader;
+
+import org.gradle.testretry.benchmarks.SyntheticClasses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads classes from a synthetic jar with many entries.
+ * <p>
+ * {@code readClass} measures lookups once the classpath is indexed, {@code indexAndReadClass}
+ * measures the first lookup of a test task, including scanning the jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestsReaderBenchmark {
+
+    @Param({"10000", "100000"})
+    int entries;
+
+    private File dir;
+    private File testClassesDir;
+    private File jar;
+    private String[] classNames;
+    private int next;
+
+    private TestsReader warmReader;
+
+    @Setup(Level.Trial)
+    public void createClasspath() {
+        dir = SyntheticClasses.createTempDir("tests-reader-benchmark");
+        testClassesDir = new File(dir, "test-classes");
+        SyntheticClasses.writeClassesDir(
+            testClassesDir,
+            Collections.singletonMap("acme/SomeTest", SyntheticClasses.generate("acme/SomeTest", "java/lang/Object"))
+        );
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        classNames = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            String internalName = "lib/p" + i % 100 + "/Library" + i;
+            classes.put(internalName, SyntheticClasses.generate(internalName, "java/lang/Object"));
+            classNames[i] = internalName.replace('/', '.');
+        }
+        jar = new File(dir, "lib.jar");
+        SyntheticClasses.writeJar(jar, classes);
+
+        warmReader = reader();
+        warmReader.readClass(classNames[0], SuperClassVisitor::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteClasspath() {
+        warmReader.close();
+        SyntheticClasses.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public Optional<String> readClass() {
+        return warmReader.readClass(nextClassName(), SuperClassVisitor::new);
+    }
+
+    @Benchmark
+    public Optional<String> indexAndReadClass() {
+        try (TestsReader reader = reader()) {
+            return reader.readClass(nextClassName(), SuperClassVisitor::new);
+        }
+    }
+
+    private TestsReader reader() {
+        return new TestsReader(Collections.singleton(testClassesDir), Collections.singletonList(jar));
+    }
+
+    private String nextClassName() {
+        // spread lookups over the whole jar
+        next = (next + 7919) % classNames.length;
+        return classNames[next];
+    }
+
+    private static final class SuperClassVisitor extends TestsReader.Visitor<String> {
+
+        private String superName;
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.superName = superName;
+        }
+
+        @Override
+        public String getResult() {
+            return superName;
+        }
+    }
+}
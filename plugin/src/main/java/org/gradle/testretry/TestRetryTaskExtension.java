@@ -16,10 +16,14 @@
 package org.gradle.testretry;
 
 import org.gradle.api.Action;
+import org.gradle.api.Incubating;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.testing.Test;
 
+import java.time.Duration;
+
 /**
  * Allows configuring test retry mechanics.
  * <p>
@@ -69,6 +73,146 @@ public interface TestRetryTaskExtension {
      */
     Property<Integer> getMaxFailures();
 
+    /**
+     * Whether to retry the failed tests of a class as soon as the class has completed,
+     * while the rest of the initial test execution is still running.
+     * <p>
+     * Retries run in a separate test execution that needs a worker lease of its own,
+     * so they only overlap with the initial execution if a worker is available.
+     * Failures that are left once the initial execution has completed are retried after it as usual.
+     * <p>
+     * This setting defaults to {@code false}, which results in all retries running after the initial execution.
+     *
+     * @return whether to start retrying failed tests before the initial test execution has completed
+     */
+    @Incubating
+    Property<Boolean> getPipelineRetries();
+
+    /**
+     * Whether retry rounds ignore the {@link Test#getForkEvery()} of the task,
+     * so that their forks keep running all the classes they are given rather than being restarted after every {@code forkEvery} classes.
+     * <p>
+     * Each fork of a retry round then pays the JVM startup, class loading and warm-up costs once,
+     * no matter how many of the failed classes it runs.
+     * This weakens the isolation between test classes on retry: classes that the task runs in separate JVMs
+     * share a JVM with other retried classes, along with any static state they leave behind.
+     * Only enable this if the tests do not rely on {@code forkEvery} for isolation.
+     * <p>
+     * This setting defaults to {@code false}, which results in retry rounds using the {@code forkEvery} of the task.
+     *
+     * @return whether retry rounds ignore the {@code forkEvery} of the task
+     */
+    @Incubating
+    Property<Boolean> getIgnoreForkEveryOnRetry();
+
+    /**
+     * Whether failed tests are retried right away, inside the test worker that ran them, if the test framework supports it.
+     * <p>
+     * This is supported for TestNG, where each failed test method is retried by a retry analyzer,
+     * and each failed attempt is reported as skipped. Methods that declare their own retry analyzer are left alone.
+     * Failures of configuration methods, and tests of other frameworks, are retried after the test execution as usual.
+     * <p>
+     * In the worker, annotation filters only see annotations with runtime retention,
+     * and {@link #getMaxFailures()} is counted per worker.
+     * Tests are not retried in the worker if {@link #getFailOnPassedAfterRetry()} is set.
+     * <p>
+     * This setting defaults to {@code false}, which results in all retries running after the test execution.
+     *
+     * @return whether failed tests are retried inside the test worker
+     */
+    @Incubating
+    Property<Boolean> getRetryInWorker();
+
+    /**
+     * The number of failed tests after which a round of test execution is stopped early, without retrying any of its failures.
+     * <p>
+     * This frees the build from running the rest of a test suite that fails throughout,
+     * for example because a service that the tests need is down.
+     * The failures of the stopped round fail the task, and the tests that did not run yet are not reported.
+     * <p>
+     * This setting defaults to {@code 0}, which results in rounds never being stopped because of the number of failed tests.
+     * Any value less than 1 disables stopping on the number of failed tests.
+     *
+     * @return the number of failed tests after which a round is stopped
+     */
+    @Incubating
+    Property<Integer> getStopAfterFailures();
+
+    /**
+     * The percentage of failed tests after which a round of test execution is stopped early, without retrying any of its failures.
+     * <p>
+     * The percentage is that of the tests that have completed in the round so far,
+     * and is only considered once at least 20 tests have completed.
+     * Stopping behaves like with {@link #getStopAfterFailures()}, and the round is stopped if either of them is exceeded.
+     * <p>
+     * This setting defaults to {@code 0}, which results in rounds never being stopped because of the percentage of failed tests.
+     * Any value less than 1 disables stopping on the percentage of failed tests.
+     *
+     * @return the percentage of failed tests after which a round is stopped
+     */
+    @Incubating
+    Property<Integer> getStopAfterFailurePercentage();
+
+    /**
+     * The maximum wall-clock time that retrying may take, counted from the start of the first retry after the test execution.
+     * <p>
+     * Each retry runs the failed tests that are estimated to fit into the remaining time, cheapest first,
+     * based on how long they took before. The failed tests that don't fit are reported as not retried and fail the task.
+     * Estimates can be off, so a retry may still exceed the budget. Retries that run while the test execution is still running,
+     * see {@link #getPipelineRetries()}, are not bounded by it.
+     * <p>
+     * This setting defaults to {@link Duration#ZERO}, which results in no limit.
+     * Any duration that is zero or negative results in no limit.
+     *
+     * @return the maximum time that retrying may take
+     */
+    @Incubating
+    Property<Duration> getMaxRetryDuration();
+
+    /**
+     * Whether a test is retried again after it failed the same way in two consecutive attempts.
+     * <p>
+     * Failures are the same if their exceptions and causes have the same types and messages, and were thrown from the same place.
+     * A test that fails the same way twice in a row most likely has a real problem rather than being flaky,
+     * so retrying it again is likely to be wasted time.
+     * Tests that are not retried again because of this fail the task.
+     * <p>
+     * This setting defaults to {@code true}, which results in tests being retried up to {@link #getMaxRetries()} times,
+     * however they fail.
+     *
+     * @return whether tests that failed the same way twice in a row are retried again
+     */
+    @Incubating
+    Property<Boolean> getRetryIdenticalFailures();
+
+    /**
+     * Whether the outcomes of tests are kept between builds and used to decide which failed tests are worth retrying.
+     * <p>
+     * For each test, the history keeps how often it failed, how often it passed when retried, how long it took, and how it last failed.
+     * A failed test that never passed when retried in earlier builds is not retried if it fails the same way as it last did.
+     * A failed test that usually passes on retry is retried only as often as needed to pass with a high chance, up to {@link #getMaxRetries()}.
+     * With a {@link #getMaxRetryDuration() retry time budget}, the retries most likely to pass per second are picked first.
+     * Tests that are not retried because of their history fail the task.
+     * <p>
+     * This setting defaults to {@code false}.
+     *
+     * @return whether the history of tests decides which failed tests are retried
+     */
+    @Incubating
+    Property<Boolean> getUseTestHistory();
+
+    /**
+     * The file the history of the tests is kept in, if {@link #getUseTestHistory()} is enabled.
+     * <p>
+     * It defaults to a file in the temporary directory of the test task, so the history is lost when the build directory is deleted.
+     * A file outside of the build directory, e.g. one that is cached between CI builds, keeps it.
+     * Test tasks should not share a file.
+     *
+     * @return the file the history of the tests is kept in
+     */
+    @Incubating
+    RegularFileProperty getTestHistoryFile();
+
     /**
      * The filter for specifying which tests may be retried.
      */
@@ -79,6 +223,18 @@ public interface TestRetryTaskExtension {
      */
     void filter(Action<? super Filter> action);
 
+    /**
+     * The quarantine for specifying which test classes run separately from the other tests.
+     */
+    @Incubating
+    Quarantine getQuarantine();
+
+    /**
+     * The quarantine for specifying which test classes run separately from the other tests.
+     */
+    @Incubating
+    void quarantine(Action<? super Quarantine> action);
+
     /**
      * A filter for specifying which tests may be retried.
      *
@@ -138,6 +294,83 @@ public interface TestRetryTaskExtension {
          */
         SetProperty<String> getExcludeAnnotationClasses();
 
+        /**
+         * The patterns used to include tests based on how they failed.
+         *
+         * The pattern string matches against the qualified class names of the exception a test failed with, its causes,
+         * and their super classes. It may contain '*' characters, which match zero or more of any character.
+         * It may be followed by a ':' and a pattern for the message of the exception, in which case the exception must also have a matching message,
+         * e.g. {@code java.net.ConnectException: *Connection refused*}.
+         *
+         * A failure only has to match one pattern to be retried.
+         *
+         * If no patterns are specified, all failures (that also meet other configured filters) will be retried.
+         */
+        @Incubating
+        SetProperty<String> getIncludeFailures();
+
+        /**
+         * The patterns used to exclude tests based on how they failed.
+         *
+         * The pattern string matches against the qualified class names of the exception a test failed with, its causes,
+         * and their super classes. It may contain '*' characters, which match zero or more of any character.
+         * It may be followed by a ':' and a pattern for the message of the exception, in which case the exception must also have a matching message,
+         * e.g. {@code java.lang.AssertionError: expected*}.
+         *
+         * A failure only has to match one pattern to not be retried.
+         *
+         * If no patterns are specified, all failures (that also meet other configured filters) will be retried.
+         */
+        @Incubating
+        SetProperty<String> getExcludeFailures();
+
+    }
+
+    /**
+     * A quarantine for test classes that are flaky because they share global state with other tests, or slow them down.
+     *
+     * Quarantined classes run in a fork of their own while the other tests run, and their failed tests are retried in it.
+     * They are not run together with the other tests, so their instability and their retries don't hold up the other tests.
+     * The quarantine only takes effect if tests are retried at all, see {@link #getMaxRetries()}.
+     *
+     * By default, no classes are quarantined.
+     */
+    @Incubating
+    interface Quarantine {
+
+        /**
+         * The patterns used to quarantine test classes based on their class name.
+         *
+         * The pattern string matches against qualified class names.
+         * It may contain '*' characters, which match zero or more of any character.
+         *
+         * A class name only has to match one pattern, or the class one of the annotation patterns, to be quarantined.
+         * Nested classes are quarantined along with the class that encloses them.
+         */
+        SetProperty<String> getClasses();
+
+        /**
+         * The patterns used to quarantine test classes based on their class level annotations.
+         *
+         * The pattern string matches against the qualified class names of a test class's annotations.
+         * It may contain '*' characters, which match zero or more of any character.
+         *
+         * A class need only have one annotation matching any of the patterns, or match one of the class name patterns, to be quarantined.
+         *
+         * Annotations present on super classes that are {@code @Inherited} are considered when inspecting subclasses.
+         */
+        SetProperty<String> getAnnotationClasses();
+
+        /**
+         * The maximum number of times to retry a failed test of a quarantined class.
+         * <p>
+         * This setting defaults to {@link TestRetryTaskExtension#getMaxRetries()}.
+         * Failed tests of quarantined classes are not retried with a value of zero.
+         *
+         * @return the maximum number of times to retry a failed test of a quarantined class
+         */
+        Property<Integer> getMaxRetries();
+
     }
 
 }
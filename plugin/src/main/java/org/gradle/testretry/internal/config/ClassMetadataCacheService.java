@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.config;
+
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.testretry.internal.testsreader.ClassFileKey;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
+import org.gradle.testretry.internal.testsreader.ClassMetadataCache;
+import org.gradle.testretry.internal.testsreader.LruClassMetadataCache;
+
+import java.util.function.Supplier;
+
+/**
+ * Shares class metadata between all test tasks.
+ * <p>
+ * The entries live in the daemon for as long as the plugin classes are loaded, so unchanged
+ * classes are not read again by later builds either. Entries are keyed by class file location,
+ * size and modification time, so changed classes are never served from the cache.
+ * <p>
+ * Requires Gradle 6.1 or later.
+ */
+public abstract class ClassMetadataCacheService implements BuildService<ClassMetadataCacheService.Params>, ClassMetadataCache {
+
+    static final String NAME = "testRetryClassMetadataCache";
+    static final String MAX_SIZE_PROPERTY = "org.gradle.testretry.classMetadataCacheMaxSizeMb";
+    private static final long DEFAULT_MAX_SIZE_MB = 32;
+
+    private static final LruClassMetadataCache CACHE = new LruClassMetadataCache(DEFAULT_MAX_SIZE_MB * 1024 * 1024);
+
+    public interface Params extends BuildServiceParameters {
+
+        Property<Long> getMaxSizeBytes();
+
+    }
+
+    public ClassMetadataCacheService() {
+        CACHE.setMaxSizeBytes(getParameters().getMaxSizeBytes().get());
+    }
+
+    @Override
+    public ClassMetadata get(ClassFileKey key, Supplier<ClassMetadata> loader) {
+        return CACHE.get(key, loader);
+    }
+
+    static Provider<ClassMetadataCacheService> register(Test test) {
+        long maxSizeBytes = maxSizeMb(test) * 1024 * 1024;
+        Provider<ClassMetadataCacheService> service = test.getProject().getGradle().getSharedServices().registerIfAbsent(
+            NAME,
+            ClassMetadataCacheService.class,
+            spec -> spec.getParameters().getMaxSizeBytes().set(maxSizeBytes)
+        );
+        test.usesService(service);
+        return service;
+    }
+
+    private static long maxSizeMb(Test test) {
+        Object value = test.getProject().findProperty(MAX_SIZE_PROPERTY);
+        if (value == null) {
+            return DEFAULT_MAX_SIZE_MB;
+        }
+        try {
+            long maxSizeMb = Long.parseLong(value.toString().trim());
+            if (maxSizeMb >= 0 && maxSizeMb <= Long.MAX_VALUE / (1024 * 1024)) {
+                return maxSizeMb;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        test.getLogger().warn("Ignoring the value '{}' of the {} property, which is not a size in MB. Using the default of {} MB instead.", value, MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE_MB);
+        return DEFAULT_MAX_SIZE_MB;
+    }
+}
@@ -16,26 +16,48 @@
 package org.gradle.testretry.internal.config;
 
 import org.gradle.api.Action;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.SetProperty;
 import org.gradle.testretry.TestRetryTaskExtension;
 
 import javax.inject.Inject;
+import java.time.Duration;
 
 public class DefaultTestRetryTaskExtension implements TestRetryTaskExtension {
 
     private final Property<Boolean> failOnPassedAfterRetry;
     private final Property<Integer> maxRetries;
     private final Property<Integer> maxFailures;
+    private final Property<Boolean> pipelineRetries;
+    private final Property<Boolean> ignoreForkEveryOnRetry;
+    private final Property<Boolean> retryInWorker;
+    private final Property<Integer> stopAfterFailures;
+    private final Property<Integer> stopAfterFailurePercentage;
+    private final Property<Duration> maxRetryDuration;
+    private final Property<Boolean> retryIdenticalFailures;
+    private final Property<Boolean> useTestHistory;
+    private final RegularFileProperty testHistoryFile;
     private final Filter filter;
+    private final Quarantine quarantine;
 
     @Inject
     public DefaultTestRetryTaskExtension(ObjectFactory objects) {
         this.failOnPassedAfterRetry = objects.property(Boolean.class);
         this.maxRetries = objects.property(Integer.class);
         this.maxFailures = objects.property(Integer.class);
+        this.pipelineRetries = objects.property(Boolean.class);
+        this.ignoreForkEveryOnRetry = objects.property(Boolean.class);
+        this.retryInWorker = objects.property(Boolean.class);
+        this.stopAfterFailures = objects.property(Integer.class);
+        this.stopAfterFailurePercentage = objects.property(Integer.class);
+        this.maxRetryDuration = objects.property(Duration.class);
+        this.retryIdenticalFailures = objects.property(Boolean.class);
+        this.useTestHistory = objects.property(Boolean.class);
+        this.testHistoryFile = objects.fileProperty();
         this.filter = new FilterImpl(objects);
+        this.quarantine = new QuarantineImpl(objects);
     }
 
     public Property<Boolean> getFailOnPassedAfterRetry() {
@@ -50,6 +72,42 @@ public class DefaultTestRetryTaskExtension implements TestRetryTaskExtension {
         return maxFailures;
     }
 
+    public Property<Boolean> getPipelineRetries() {
+        return pipelineRetries;
+    }
+
+    public Property<Boolean> getIgnoreForkEveryOnRetry() {
+        return ignoreForkEveryOnRetry;
+    }
+
+    public Property<Boolean> getRetryInWorker() {
+        return retryInWorker;
+    }
+
+    public Property<Integer> getStopAfterFailures() {
+        return stopAfterFailures;
+    }
+
+    public Property<Integer> getStopAfterFailurePercentage() {
+        return stopAfterFailurePercentage;
+    }
+
+    public Property<Duration> getMaxRetryDuration() {
+        return maxRetryDuration;
+    }
+
+    public Property<Boolean> getRetryIdenticalFailures() {
+        return retryIdenticalFailures;
+    }
+
+    public Property<Boolean> getUseTestHistory() {
+        return useTestHistory;
+    }
+
+    public RegularFileProperty getTestHistoryFile() {
+        return testHistoryFile;
+    }
+
     @Override
     public void filter(Action<? super Filter> action) {
         action.execute(filter);
@@ -60,18 +118,32 @@ public class DefaultTestRetryTaskExtension implements TestRetryTaskExtension {
         return filter;
     }
 
+    @Override
+    public void quarantine(Action<? super Quarantine> action) {
+        action.execute(quarantine);
+    }
+
+    @Override
+    public Quarantine getQuarantine() {
+        return quarantine;
+    }
+
     private static final class FilterImpl implements Filter {
 
         private final SetProperty<String> includeClasses;
         private final SetProperty<String> includeAnnotationClasses;
         private final SetProperty<String> excludeClasses;
         private final SetProperty<String> excludeAnnotationClasses;
+        private final SetProperty<String> includeFailures;
+        private final SetProperty<String> excludeFailures;
 
         public FilterImpl(ObjectFactory objects) {
             this.includeClasses = objects.setProperty(String.class);
             this.includeAnnotationClasses = objects.setProperty(String.class);
             this.excludeClasses = objects.setProperty(String.class);
             this.excludeAnnotationClasses = objects.setProperty(String.class);
+            this.includeFailures = objects.setProperty(String.class);
+            this.excludeFailures = objects.setProperty(String.class);
         }
 
         @Override
@@ -93,6 +165,44 @@ public class DefaultTestRetryTaskExtension implements TestRetryTaskExtension {
         public SetProperty<String> getExcludeAnnotationClasses() {
             return excludeAnnotationClasses;
         }
+
+        @Override
+        public SetProperty<String> getIncludeFailures() {
+            return includeFailures;
+        }
+
+        @Override
+        public SetProperty<String> getExcludeFailures() {
+            return excludeFailures;
+        }
+    }
+
+    private static final class QuarantineImpl implements Quarantine {
+
+        private final SetProperty<String> classes;
+        private final SetProperty<String> annotationClasses;
+        private final Property<Integer> maxRetries;
+
+        public QuarantineImpl(ObjectFactory objects) {
+            this.classes = objects.setProperty(String.class);
+            this.annotationClasses = objects.setProperty(String.class);
+            this.maxRetries = objects.property(Integer.class);
+        }
+
+        @Override
+        public SetProperty<String> getClasses() {
+            return classes;
+        }
+
+        @Override
+        public SetProperty<String> getAnnotationClasses() {
+            return annotationClasses;
+        }
+
+        @Override
+        public Property<Integer> getMaxRetries() {
+            return maxRetries;
+        }
     }
 
 }
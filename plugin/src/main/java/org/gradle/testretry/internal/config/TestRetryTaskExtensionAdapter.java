@@ -15,6 +15,7 @@
  */
 package org.gradle.testretry.internal.config;
 
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.provider.ProviderFactory;
@@ -22,6 +23,9 @@ import org.gradle.api.provider.SetProperty;
 import org.gradle.testretry.TestRetryTaskExtension;
 import org.gradle.util.VersionNumber;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -36,6 +40,14 @@ public final class TestRetryTaskExtensionAdapter {
     private static final int DEFAULT_MAX_RETRIES = 0;
     private static final int DEFAULT_MAX_FAILURES = 0;
     private static final boolean DEFAULT_FAIL_ON_PASSED_AFTER_RETRY = false;
+    private static final boolean DEFAULT_PIPELINE_RETRIES = false;
+    private static final boolean DEFAULT_IGNORE_FORK_EVERY_ON_RETRY = false;
+    private static final boolean DEFAULT_RETRY_IN_WORKER = false;
+    private static final int DEFAULT_STOP_AFTER_FAILURES = 0;
+    private static final int DEFAULT_STOP_AFTER_FAILURE_PERCENTAGE = 0;
+    private static final Duration DEFAULT_MAX_RETRY_DURATION = Duration.ZERO;
+    private static final boolean DEFAULT_RETRY_IDENTICAL_FAILURES = true;
+    private static final boolean DEFAULT_USE_TEST_HISTORY = false;
 
     private final ProviderFactory providerFactory;
     private final TestRetryTaskExtension extension;
@@ -60,16 +72,32 @@ public final class TestRetryTaskExtensionAdapter {
             extension.getMaxRetries().convention(DEFAULT_MAX_RETRIES);
             extension.getMaxFailures().convention(DEFAULT_MAX_FAILURES);
             extension.getFailOnPassedAfterRetry().convention(DEFAULT_FAIL_ON_PASSED_AFTER_RETRY);
+            extension.getPipelineRetries().convention(DEFAULT_PIPELINE_RETRIES);
+            extension.getIgnoreForkEveryOnRetry().convention(DEFAULT_IGNORE_FORK_EVERY_ON_RETRY);
+            extension.getRetryInWorker().convention(DEFAULT_RETRY_IN_WORKER);
+            extension.getStopAfterFailures().convention(DEFAULT_STOP_AFTER_FAILURES);
+            extension.getStopAfterFailurePercentage().convention(DEFAULT_STOP_AFTER_FAILURE_PERCENTAGE);
+            extension.getMaxRetryDuration().convention(DEFAULT_MAX_RETRY_DURATION);
+            extension.getRetryIdenticalFailures().convention(DEFAULT_RETRY_IDENTICAL_FAILURES);
+            extension.getUseTestHistory().convention(DEFAULT_USE_TEST_HISTORY);
             extension.getFilter().getIncludeClasses().convention(Collections.emptySet());
             extension.getFilter().getIncludeAnnotationClasses().convention(Collections.emptySet());
             extension.getFilter().getExcludeClasses().convention(Collections.emptySet());
             extension.getFilter().getExcludeAnnotationClasses().convention(Collections.emptySet());
+            extension.getFilter().getIncludeFailures().convention(Collections.emptySet());
+            extension.getFilter().getExcludeFailures().convention(Collections.emptySet());
+            extension.getQuarantine().getClasses().convention(Collections.emptySet());
+            extension.getQuarantine().getAnnotationClasses().convention(Collections.emptySet());
         } else {
             // https://github.com/gradle/gradle/issues/7485
             extension.getFilter().getIncludeClasses().empty();
             extension.getFilter().getIncludeAnnotationClasses().empty();
             extension.getFilter().getExcludeClasses().empty();
             extension.getFilter().getExcludeAnnotationClasses().empty();
+            extension.getFilter().getIncludeFailures().empty();
+            extension.getFilter().getExcludeFailures().empty();
+            extension.getQuarantine().getClasses().empty();
+            extension.getQuarantine().getAnnotationClasses().empty();
         }
     }
 
@@ -99,6 +127,44 @@ public final class TestRetryTaskExtensionAdapter {
         return read(extension.getMaxFailures(), DEFAULT_MAX_FAILURES);
     }
 
+    public boolean getPipelineRetries() {
+        return read(extension.getPipelineRetries(), DEFAULT_PIPELINE_RETRIES);
+    }
+
+    public boolean getIgnoreForkEveryOnRetry() {
+        return read(extension.getIgnoreForkEveryOnRetry(), DEFAULT_IGNORE_FORK_EVERY_ON_RETRY);
+    }
+
+    public boolean getRetryInWorker() {
+        return read(extension.getRetryInWorker(), DEFAULT_RETRY_IN_WORKER);
+    }
+
+    public int getStopAfterFailures() {
+        return read(extension.getStopAfterFailures(), DEFAULT_STOP_AFTER_FAILURES);
+    }
+
+    public int getStopAfterFailurePercentage() {
+        return read(extension.getStopAfterFailurePercentage(), DEFAULT_STOP_AFTER_FAILURE_PERCENTAGE);
+    }
+
+    public Duration getMaxRetryDuration() {
+        return read(extension.getMaxRetryDuration(), DEFAULT_MAX_RETRY_DURATION);
+    }
+
+    public boolean getRetryIdenticalFailures() {
+        return read(extension.getRetryIdenticalFailures(), DEFAULT_RETRY_IDENTICAL_FAILURES);
+    }
+
+    public boolean getUseTestHistory() {
+        return read(extension.getUseTestHistory(), DEFAULT_USE_TEST_HISTORY);
+    }
+
+    @Nullable
+    public File getTestHistoryFile() {
+        RegularFile file = extension.getTestHistoryFile().getOrNull();
+        return file == null ? null : file.getAsFile();
+    }
+
     public Set<String> getIncludeClasses() {
         return read(extension.getFilter().getIncludeClasses(), Collections.emptySet());
     }
@@ -115,6 +181,31 @@ public final class TestRetryTaskExtensionAdapter {
         return read(extension.getFilter().getExcludeAnnotationClasses(), Collections.emptySet());
     }
 
+    public Set<String> getIncludeFailures() {
+        return read(extension.getFilter().getIncludeFailures(), Collections.emptySet());
+    }
+
+    public Set<String> getExcludeFailures() {
+        return read(extension.getFilter().getExcludeFailures(), Collections.emptySet());
+    }
+
+    public Set<String> getQuarantineClasses() {
+        return read(extension.getQuarantine().getClasses(), Collections.emptySet());
+    }
+
+    public Set<String> getQuarantineAnnotationClasses() {
+        return read(extension.getQuarantine().getAnnotationClasses(), Collections.emptySet());
+    }
+
+    public boolean hasQuarantine() {
+        return !getQuarantineClasses().isEmpty() || !getQuarantineAnnotationClasses().isEmpty();
+    }
+
+    public int getQuarantineMaxRetries() {
+        Integer maxRetries = extension.getQuarantine().getMaxRetries().getOrNull();
+        return maxRetries == null ? getMaxRetries() : maxRetries;
+    }
+
     public boolean getSimulateNotRetryableTest() {
         return simulateNotRetryableTest;
     }
@@ -28,9 +28,11 @@ import org.gradle.api.tasks.testing.Test;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.testretry.TestRetryTaskExtension;
 import org.gradle.testretry.internal.executer.RetryTestExecuter;
+import org.gradle.testretry.internal.testsreader.ClassMetadataCache;
 import org.gradle.util.VersionNumber;
 import org.jetbrains.annotations.NotNull;
 
+import javax.annotation.Nullable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -54,7 +56,9 @@ public final class TestTaskConfigurer {
 
         test.getExtensions().add(TestRetryTaskExtension.class, TestRetryTaskExtension.NAME, extension);
 
-        test.doFirst(new ConditionalTaskAction(isDeactivatedByTestDistributionPlugin, new InitTaskAction(adapter, objectFactory)));
+        Provider<? extends ClassMetadataCache> classMetadataCache = supportsBuildServices(gradleVersion) ? ClassMetadataCacheService.register(test) : null;
+
+        test.doFirst(new ConditionalTaskAction(isDeactivatedByTestDistributionPlugin, new InitTaskAction(adapter, objectFactory, classMetadataCache)));
         test.doLast(new ConditionalTaskAction(isDeactivatedByTestDistributionPlugin, new FinalizeTaskAction()));
     }
 
@@ -83,6 +87,10 @@ public final class TestTaskConfigurer {
         return gradleVersion.compareTo(VersionNumber.parse("6.1")) >= 0;
     }
 
+    private static boolean supportsBuildServices(VersionNumber gradleVersion) {
+        return gradleVersion.compareTo(VersionNumber.parse("6.1")) >= 0;
+    }
+
     private static boolean callShouldTestRetryPluginBeDeactivated(Test test) {
         Object distributionExtension = test.getExtensions().findByName("distribution");
         if (distributionExtension == null) {
@@ -97,10 +105,29 @@ public final class TestTaskConfigurer {
         }
     }
 
-    private static RetryTestExecuter createRetryTestExecuter(Test task, TestRetryTaskExtensionAdapter extension, ObjectFactory objectFactory) {
+    private static RetryTestExecuter createRetryTestExecuter(
+        Test task,
+        TestRetryTaskExtensionAdapter extension,
+        ObjectFactory objectFactory,
+        @Nullable ClassMetadataCache classMetadataCache
+    ) {
         TestExecuter<JvmTestExecutionSpec> delegate = getTestExecuter(task);
+        // a second executer, as an executer only supports one execution at a time
+        TestExecuter<JvmTestExecutionSpec> laneDelegate = extension.getPipelineRetries() ? getTestExecuter(task) : null;
+        TestExecuter<JvmTestExecutionSpec> quarantineDelegate = extension.hasQuarantine() ? getTestExecuter(task) : null;
         Instantiator instantiator = invoke(declaredMethod(AbstractTestTask.class, "getInstantiator"), task);
-        return new RetryTestExecuter(task, extension, delegate, instantiator, objectFactory, task.getTestClassesDirs().getFiles(), task.getClasspath().getFiles());
+        return new RetryTestExecuter(
+            task,
+            extension,
+            delegate,
+            laneDelegate,
+            quarantineDelegate,
+            instantiator,
+            objectFactory,
+            task.getTestClassesDirs().getFiles(),
+            task.getClasspath().getFiles(),
+            classMetadataCache
+        );
     }
 
     private static TestExecuter<JvmTestExecutionSpec> getTestExecuter(Test task) {
@@ -148,15 +175,23 @@ public final class TestTaskConfigurer {
 
         private final TestRetryTaskExtensionAdapter adapter;
         private final ObjectFactory objectFactory;
-
-        public InitTaskAction(TestRetryTaskExtensionAdapter adapter, ObjectFactory objectFactory) {
+        @Nullable
+        private final Provider<? extends ClassMetadataCache> classMetadataCache;
+
+        public InitTaskAction(
+            TestRetryTaskExtensionAdapter adapter,
+            ObjectFactory objectFactory,
+            @Nullable Provider<? extends ClassMetadataCache> classMetadataCache
+        ) {
             this.adapter = adapter;
             this.objectFactory = objectFactory;
+            this.classMetadataCache = classMetadataCache;
         }
 
         @Override
         public void execute(@NotNull Test task) {
-            RetryTestExecuter retryTestExecuter = createRetryTestExecuter(task, adapter, objectFactory);
+            ClassMetadataCache cache = classMetadataCache == null ? null : classMetadataCache.get();
+            RetryTestExecuter retryTestExecuter = createRetryTestExecuter(task, adapter, objectFactory, cache);
             setTestExecuter(task, retryTestExecuter);
         }
     }
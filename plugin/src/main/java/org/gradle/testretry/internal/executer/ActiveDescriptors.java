@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * The descriptors of the tests that have started but not completed, keyed by test id.
+ * <p>
+ * Uses open addressing with linear probing, so that tracking a test does not allocate.
+ * The table only grows with the number of tests running at the same time.
+ * <p>
+ * Alongside each descriptor, the id of its parent, its start time and the number of completed tests
+ * counted towards it are kept in primitive form, so that measuring tests does not allocate either.
+ */
+final class ActiveDescriptors {
+
+    static final long NO_START_TIME = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Object[] ids = new Object[INITIAL_CAPACITY];
+    private TestDescriptorInternal[] descriptors = new TestDescriptorInternal[INITIAL_CAPACITY];
+    private Object[] parentIds = new Object[INITIAL_CAPACITY];
+    private long[] startTimes = new long[INITIAL_CAPACITY];
+    private int[] testCounts = new int[INITIAL_CAPACITY];
+    private int size;
+
+    void put(TestDescriptorInternal descriptor) {
+        put(descriptor, null, NO_START_TIME);
+    }
+
+    /**
+     * Tracks the given test.
+     *
+     * @param startTime the start time of the test, if it is measured, or {@link #NO_START_TIME}
+     */
+    void put(TestDescriptorInternal descriptor, @Nullable Object parentId, long startTime) {
+        if (2 * (size + 1) > ids.length) {
+            resize(ids.length * 2);
+        }
+        Object id = descriptor.getId();
+        int index = indexOf(ids, id);
+        if (ids[index] == null) {
+            ids[index] = id;
+            size++;
+        }
+        descriptors[index] = descriptor;
+        parentIds[index] = parentId;
+        startTimes[index] = startTime;
+        testCounts[index] = 0;
+    }
+
+    @Nullable
+    TestDescriptorInternal get(Object id) {
+        int index = indexOf(ids, id);
+        return descriptors[index];
+    }
+
+    /**
+     * The start time of the given test, or {@link #NO_START_TIME} if it is not tracked or its start time is not measured.
+     */
+    long getStartTime(Object id) {
+        int index = indexOf(ids, id);
+        return ids[index] == null ? NO_START_TIME : startTimes[index];
+    }
+
+    @Nullable
+    Object getParentId(Object id) {
+        return parentIds[indexOf(ids, id)];
+    }
+
+    /**
+     * The number of tests counted towards the given class with {@link #countTest(Object)}.
+     */
+    int getTestCount(Object id) {
+        int index = indexOf(ids, id);
+        return ids[index] == null ? 0 : testCounts[index];
+    }
+
+    /**
+     * Counts a completed test towards the class it belongs to, which is the closest of its ancestors that is a class.
+     *
+     * @param parentId the id of the parent of the completed test
+     */
+    void countTest(@Nullable Object parentId) {
+        Object id = parentId;
+        while (id != null) {
+            int index = indexOf(ids, id);
+            TestDescriptorInternal descriptor = descriptors[index];
+            if (descriptor == null) {
+                return;
+            } else if (isClass(descriptor)) {
+                testCounts[index]++;
+                return;
+            }
+            id = parentIds[index];
+        }
+    }
+
+    @Nullable
+    TestDescriptorInternal remove(Object id) {
+        int index = indexOf(ids, id);
+        TestDescriptorInternal descriptor = descriptors[index];
+        if (descriptor == null) {
+            return null;
+        }
+
+        clearSlot(index);
+        size--;
+
+        // move later entries of the same probe sequence into the gap
+        int mask = ids.length - 1;
+        int gap = index;
+        for (int i = (index + 1) & mask; ids[i] != null; i = (i + 1) & mask) {
+            int home = home(ids[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                ids[gap] = ids[i];
+                descriptors[gap] = descriptors[i];
+                parentIds[gap] = parentIds[i];
+                startTimes[gap] = startTimes[i];
+                testCounts[gap] = testCounts[i];
+                clearSlot(i);
+                gap = i;
+            }
+        }
+        return descriptor;
+    }
+
+    void clear() {
+        Arrays.fill(ids, null);
+        Arrays.fill(descriptors, null);
+        Arrays.fill(parentIds, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static boolean isClass(TestDescriptorInternal descriptor) {
+        return descriptor.getClassName() != null && descriptor.getClassName().equals(descriptor.getName());
+    }
+
+    private void clearSlot(int index) {
+        ids[index] = null;
+        descriptors[index] = null;
+        parentIds[index] = null;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldIds = ids;
+        TestDescriptorInternal[] oldDescriptors = descriptors;
+        Object[] oldParentIds = parentIds;
+        long[] oldStartTimes = startTimes;
+        int[] oldTestCounts = testCounts;
+        ids = new Object[capacity];
+        descriptors = new TestDescriptorInternal[capacity];
+        parentIds = new Object[capacity];
+        startTimes = new long[capacity];
+        testCounts = new int[capacity];
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != null) {
+                int index = indexOf(ids, oldIds[i]);
+                ids[index] = oldIds[i];
+                descriptors[index] = oldDescriptors[i];
+                parentIds[index] = oldParentIds[i];
+                startTimes[index] = oldStartTimes[i];
+                testCounts[index] = oldTestCounts[i];
+            }
+        }
+    }
+
+    // the slot holding the id, or the empty slot where it belongs
+    private static int indexOf(Object[] ids, Object id) {
+        int mask = ids.length - 1;
+        int index = home(id, mask);
+        while (ids[index] != null && !ids[index].equals(id)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int home(Object id, int mask) {
+        int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
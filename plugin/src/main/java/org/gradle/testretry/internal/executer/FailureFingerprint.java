@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import java.util.regex.Pattern;
+
+/**
+ * A hash of what identifies a test failure: the type and message of the exception and its causes, and where it was thrown.
+ * <p>
+ * Identity hash codes, as in the default {@code toString()} of objects, are removed from messages,
+ * as they differ between attempts that fail the same way.
+ * Only the top frames of the stack trace are considered, as the frames below them belong to the test framework.
+ */
+final class FailureFingerprint {
+
+    static final int MAX_FRAMES = 8;
+    static final int MAX_CAUSES = 4;
+
+    private static final Pattern IDENTITY_HASH_CODE = Pattern.compile("@[0-9a-f]{4,8}\\b");
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private FailureFingerprint() {
+    }
+
+    static long of(Throwable failure) {
+        long hash = FNV_OFFSET_BASIS;
+        StackTraceElement[] frames = failure.getStackTrace();
+        for (int i = 0; i < Math.min(MAX_FRAMES, frames.length); i++) {
+            hash = hash(hash, frames[i].toString());
+        }
+
+        Throwable cause = failure;
+        for (int i = 0; cause != null && i <= MAX_CAUSES; i++) {
+            // Gradle reports exceptions it can't deserialize as placeholders whose toString() is that of the original
+            hash = hash(hash, IDENTITY_HASH_CODE.matcher(cause.toString()).replaceAll("@"));
+            cause = cause.getCause() == cause ? null : cause.getCause();
+        }
+        return hash;
+    }
+
+    /**
+     * Combines the fingerprints of several failures of the same test attempt.
+     */
+    static long combine(long fingerprint, long other) {
+        return (fingerprint ^ other) * FNV_PRIME + other;
+    }
+
+    private static long hash(long hash, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+        }
+        // separate the strings, so that moving a character from one to the next changes the hash
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+}
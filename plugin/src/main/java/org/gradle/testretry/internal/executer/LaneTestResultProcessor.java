@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestFailure;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Reports the events of the executions of a {@link RetryLane} as part of the test task's own execution.
+ * <p>
+ * Test ids are only unique within a single execution, so the ids of each execution are put in their own namespace.
+ * The root test of each execution is dropped, and its children are reported as children of the task's root test.
+ * <p>
+ * A {@link RetryTestResultProcessor} that runs several executions only passes on the start of the root test of its first one,
+ * as the root test is the same for all of them. The id of the root test is therefore kept across executions.
+ */
+final class LaneTestResultProcessor implements TestResultProcessor {
+
+    private final TestResultProcessor delegate;
+    private final Supplier<Object> rootTestDescriptorId;
+    private final LegacyFailureMethod legacyFailure;
+
+    private int execution;
+    @Nullable
+    private Object laneRootTestDescriptorId;
+
+    LaneTestResultProcessor(TestResultProcessor delegate, Supplier<Object> rootTestDescriptorId) {
+        this.delegate = delegate;
+        this.rootTestDescriptorId = rootTestDescriptorId;
+        this.legacyFailure = LegacyFailureMethod.of(delegate);
+    }
+
+    void startExecution() {
+        execution++;
+    }
+
+    @Override
+    public void started(TestDescriptorInternal descriptor, TestStartEvent testStartEvent) {
+        if (testStartEvent.getParentId() == null) {
+            laneRootTestDescriptorId = descriptor.getId();
+        } else {
+            Object id = id(descriptor.getId());
+            delegate.started(new LaneTestDescriptor(id, descriptor), new TestStartEvent(testStartEvent.getStartTime(), parentId(testStartEvent.getParentId())));
+        }
+    }
+
+    @Override
+    public void completed(Object testId, TestCompleteEvent testCompleteEvent) {
+        if (!testId.equals(laneRootTestDescriptorId)) {
+            delegate.completed(id(testId), testCompleteEvent);
+        }
+    }
+
+    @Override
+    public void output(Object testId, TestOutputEvent testOutputEvent) {
+        delegate.output(id(testId), testOutputEvent);
+    }
+
+    @SuppressWarnings("unused")
+    public void failure(Object testId, Throwable throwable) {
+        // see RetryTestResultProcessor.failure(Object, Throwable)
+        legacyFailure.invoke(id(testId), throwable);
+    }
+
+    @Override
+    public void failure(Object testId, TestFailure result) {
+        delegate.failure(id(testId), result);
+    }
+
+    private Object parentId(Object parentId) {
+        return parentId.equals(laneRootTestDescriptorId) ? rootTestDescriptorId.get() : id(parentId);
+    }
+
+    private Object id(Object testId) {
+        return new LaneTestId(execution, testId);
+    }
+
+    private static final class LaneTestId {
+
+        private final int execution;
+        private final Object id;
+
+        private LaneTestId(int execution, Object id) {
+            this.execution = execution;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            LaneTestId that = (LaneTestId) o;
+            return execution == that.execution && id.equals(that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(execution, id);
+        }
+
+        @Override
+        public String toString() {
+            return "retry-lane-" + execution + ":" + id;
+        }
+    }
+
+    private static final class LaneTestDescriptor implements TestDescriptorInternal {
+
+        private final Object id;
+        private final TestDescriptorInternal delegate;
+
+        private LaneTestDescriptor(Object id, TestDescriptorInternal delegate) {
+            this.id = id;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public TestDescriptorInternal getParent() {
+            return null;
+        }
+
+        @Override
+        public Object getId() {
+            return id;
+        }
+
+        @Nullable
+        @Override
+        public String getClassName() {
+            return delegate.getClassName();
+        }
+
+        @Override
+        public String getClassDisplayName() {
+            return delegate.getClassDisplayName();
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return delegate.getDisplayName();
+        }
+
+        @Override
+        public boolean isComposite() {
+            return delegate.isComposite();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
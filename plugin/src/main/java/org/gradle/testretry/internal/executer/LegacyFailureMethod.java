@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls {@code failure(Object, Throwable)} of a test result processor.
+ * <p>
+ * Gradle 7.6 changed the method signature from failure(Object, Throwable) to failure(Object, TestFailure).
+ * Processors that are handed failures by older Gradle versions need to pass them on through the old method,
+ * which is looked up once and bound to the delegate.
+ */
+final class LegacyFailureMethod {
+
+    private static final MethodType TYPE = MethodType.methodType(void.class, Object.class, Throwable.class);
+
+    private final TestResultProcessor delegate;
+    @Nullable
+    private final MethodHandle handle;
+
+    private LegacyFailureMethod(TestResultProcessor delegate, @Nullable MethodHandle handle) {
+        this.delegate = delegate;
+        this.handle = handle;
+    }
+
+    static LegacyFailureMethod of(TestResultProcessor delegate) {
+        return new LegacyFailureMethod(delegate, lookup(delegate));
+    }
+
+    @Nullable
+    private static MethodHandle lookup(TestResultProcessor delegate) {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            return lookup.findVirtual(TestResultProcessor.class, "failure", TYPE).bindTo(delegate);
+        } catch (ReflectiveOperationException e) {
+            try {
+                return lookup.findVirtual(delegate.getClass(), "failure", TYPE).bindTo(delegate);
+            } catch (ReflectiveOperationException ignored) {
+                // only used by Gradle versions that have the method
+                return null;
+            }
+        }
+    }
+
+    void invoke(Object testId, Throwable throwable) {
+        if (handle == null) {
+            throw new IllegalStateException("Test result processor " + delegate + " does not support failure(Object, Throwable)");
+        }
+        try {
+            handle.invokeExact(testId, throwable);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+}
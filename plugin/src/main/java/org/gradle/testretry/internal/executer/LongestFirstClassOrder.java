@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.file.FileTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders the candidate class files of a retry round so that the longest running failed classes come first.
+ * <p>
+ * Gradle hands test classes to its forks round-robin, in the order the candidate class files are visited.
+ * Starting the longest classes first keeps a slow class that happens to be discovered last from deciding
+ * when the round ends.
+ * <p>
+ * Each ordered class is a filtered view of the candidate files that is walked separately, so only the
+ * longest few classes are ordered. The other classes follow in discovery order.
+ */
+final class LongestFirstClassOrder {
+
+    static final int MAX_ORDERED_CLASSES = 32;
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private LongestFirstClassOrder() {
+    }
+
+    static FileTree order(FileTree candidateClassFiles, TestNames failedTests, RetryForkPlanner forkPlanner, int forks) {
+        if (forks <= 1) {
+            // a single fork runs the classes one after the other, whatever their order
+            return candidateClassFiles;
+        }
+
+        List<String> longestFirst = forkPlanner.longestFirst(failedTests.classNames(), MAX_ORDERED_CLASSES);
+        if (longestFirst.size() <= 1) {
+            return candidateClassFiles;
+        }
+
+        List<String> classFiles = new ArrayList<>(longestFirst.size());
+        FileTree ordered = null;
+        for (String className : longestFirst) {
+            String classFile = className.replace('.', '/') + CLASS_FILE_SUFFIX;
+            classFiles.add(classFile);
+            FileTree classTree = candidateClassFiles.matching(patterns -> patterns.include(classFile));
+            ordered = ordered == null ? classTree : ordered.plus(classTree);
+        }
+        return ordered.plus(candidateClassFiles.matching(patterns -> patterns.exclude(classFiles)));
+    }
+}
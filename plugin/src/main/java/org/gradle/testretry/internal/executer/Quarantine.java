@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.file.FileTree;
+import org.gradle.testretry.internal.filter.AnnotationInspector;
+import org.gradle.testretry.internal.filter.RetryFilter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Selects the test classes that run separately from the other tests of the task, by their names or annotations.
+ * <p>
+ * Classes are matched like the retry filter matches them. Nested classes are not matched on their own,
+ * but run along with the class that encloses them, as test detection may only find them through it.
+ */
+final class Quarantine {
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final char NESTED_CLASS_SEPARATOR = '$';
+
+    private final RetryFilter classes;
+    private final RetryFilter annotationClasses;
+    private final boolean matchesClasses;
+    private final boolean matchesAnnotationClasses;
+
+    Quarantine(AnnotationInspector annotationInspector, Collection<String> classes, Collection<String> annotationClasses) {
+        Set<String> none = Collections.emptySet();
+        this.classes = new RetryFilter(annotationInspector, classes, none, none, none);
+        this.annotationClasses = new RetryFilter(annotationInspector, none, annotationClasses, none, none);
+        this.matchesClasses = !classes.isEmpty();
+        this.matchesAnnotationClasses = !annotationClasses.isEmpty();
+    }
+
+    boolean isQuarantined(String className) {
+        return (matchesClasses && classes.canRetry(className))
+            || (matchesAnnotationClasses && annotationClasses.canRetry(className));
+    }
+
+    /**
+     * The names of the quarantined classes among the given class files, which does not include nested classes.
+     */
+    Set<String> classNames(FileTree candidateClassFiles) {
+        Set<String> classNames = new LinkedHashSet<>();
+        candidateClassFiles.visit(details -> {
+            String path = details.getRelativePath().getPathString();
+            if (!details.isDirectory() && path.endsWith(CLASS_FILE_SUFFIX) && path.indexOf(NESTED_CLASS_SEPARATOR) < 0) {
+                String className = path.substring(0, path.length() - CLASS_FILE_SUFFIX.length()).replace('/', '.');
+                if (isQuarantined(className)) {
+                    classNames.add(className);
+                }
+            }
+        });
+        return classNames;
+    }
+
+    static FileTree include(FileTree candidateClassFiles, Set<String> classNames) {
+        Set<String> patterns = classFilePatterns(classNames);
+        return candidateClassFiles.matching(filterable -> filterable.include(patterns));
+    }
+
+    static FileTree exclude(FileTree candidateClassFiles, Set<String> classNames) {
+        Set<String> patterns = classFilePatterns(classNames);
+        return candidateClassFiles.matching(filterable -> filterable.exclude(patterns));
+    }
+
+    private static Set<String> classFilePatterns(Set<String> classNames) {
+        Set<String> patterns = new LinkedHashSet<>();
+        for (String className : classNames) {
+            String classFileBaseName = className.replace('.', '/');
+            patterns.add(classFileBaseName + CLASS_FILE_SUFFIX);
+            patterns.add(classFileBaseName + NESTED_CLASS_SEPARATOR + "*" + CLASS_FILE_SUFFIX);
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounds the wall-clock time of the retry rounds, counted from the start of the first of them.
+ * <p>
+ * Each round retries the failed classes that fit into the remaining time, according to the fork planner's
+ * estimate of how long the round takes. The retries with the best chance of success per second are picked first.
+ * Within a build, every failed test has failed all of its attempts so far, so unless the {@link TestHistory} of earlier builds
+ * tells the tests apart, these are the cheapest ones.
+ * <p>
+ * Estimates are based on earlier rounds, so a round may still take longer than estimated.
+ * Rounds are not stopped once they have started.
+ */
+final class RetryBudget {
+
+    private final long budgetMillis;
+    private final TestHistory history;
+    private final LongSupplier clock;
+    private long startMillis = -1;
+
+    RetryBudget(long budgetMillis, TestHistory history) {
+        this(budgetMillis, history, System::currentTimeMillis);
+    }
+
+    RetryBudget(long budgetMillis, LongSupplier clock) {
+        this(budgetMillis, TestHistory.NONE, clock);
+    }
+
+    RetryBudget(long budgetMillis, TestHistory history, LongSupplier clock) {
+        this.budgetMillis = budgetMillis;
+        this.history = history;
+        this.clock = clock;
+    }
+
+    boolean isLimited() {
+        return budgetMillis > 0;
+    }
+
+    long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * The failed tests to retry in the next round, adding those that don't fit into the remaining time to {@code leftOut}.
+     *
+     * @param classCosts the time it takes to retry the failed tests of each class
+     */
+    TestNames select(TestNames failedTests, Map<String, Long> classCosts, RetryForkPlanner forkPlanner, TestNames leftOut) {
+        if (!isLimited()) {
+            return failedTests;
+        }
+
+        long now = clock.getAsLong();
+        if (startMillis < 0) {
+            startMillis = now;
+        }
+        long remainingMillis = budgetMillis - (now - startMillis);
+
+        Map<String, Set<String>> testsByClass = new HashMap<>();
+        failedTests.forEach(testsByClass::put);
+        List<String> classNames = new ArrayList<>(testsByClass.keySet());
+        Map<String, Double> successPerMillis = new HashMap<>();
+        testsByClass.forEach((className, tests) ->
+            successPerMillis.put(className, history.passChance(className, tests) / (classCosts.getOrDefault(className, 0L) + 1))
+        );
+        classNames.sort(Comparator.comparing((String className) -> -successPerMillis.get(className)).thenComparing(className -> className));
+
+        TestNames selected = new TestNames();
+        List<Long> selectedCosts = new ArrayList<>();
+        boolean exhausted = false;
+        for (String className : classNames) {
+            if (!exhausted) {
+                selectedCosts.add(classCosts.getOrDefault(className, 0L));
+                exhausted = forkPlanner.estimateMillis(selectedCosts) > remainingMillis;
+            }
+            TestNames target = exhausted ? leftOut : selected;
+            testsByClass.get(className).forEach(test -> target.add(className, test));
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.file.FileTree;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Narrows the candidate class files of a retry round to the classes that are retried.
+ * <p>
+ * Gradle runs its test detection over every candidate class file, reading each of them, although a retry round
+ * only runs the few classes that failed. The narrowed candidates are the class files of the failed classes, their
+ * nested classes, the classes enclosing them and their super classes within the test classes dirs.
+ * <p>
+ * If a failed class is not a class of the test classes dirs, such as a test reported against a name that is not
+ * a class, the candidates are not narrowed, so that the round runs whatever the retry filter matches as before.
+ */
+final class RetryCandidateClassFiles {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryCandidateClassFiles.class);
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final char NESTED_CLASS_SEPARATOR = '$';
+
+    private RetryCandidateClassFiles() {
+    }
+
+    static FileTree narrow(FileTree candidateClassFiles, TestNames failedTests, TestsReader testsReader) {
+        Set<String> classNames = new LinkedHashSet<>();
+        try {
+            for (String className : failedTests.classNames()) {
+                if (!addClassAndSuperClasses(testsReader, className, classNames)) {
+                    return candidateClassFiles;
+                }
+                int nestedClassSeparator = className.indexOf(NESTED_CLASS_SEPARATOR);
+                if (nestedClassSeparator > 0) {
+                    addClassAndSuperClasses(testsReader, className.substring(0, nestedClassSeparator), classNames);
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.warn("Unable to determine the class files of the failed test classes, detecting tests in all class files", t);
+            return candidateClassFiles;
+        }
+
+        Set<String> includes = new LinkedHashSet<>();
+        for (String className : classNames) {
+            String classFileBaseName = className.replace('.', '/');
+            includes.add(classFileBaseName + CLASS_FILE_SUFFIX);
+            includes.add(classFileBaseName + NESTED_CLASS_SEPARATOR + "*" + CLASS_FILE_SUFFIX);
+        }
+        return candidateClassFiles.matching(patterns -> patterns.include(includes));
+    }
+
+    private static boolean addClassAndSuperClasses(TestsReader testsReader, String className, Set<String> classNames) {
+        Optional<ClassMetadata> metadata = testsReader.readTestClassDirClassMetadata(className);
+        if (!metadata.isPresent()) {
+            return false;
+        }
+
+        while (metadata.isPresent() && classNames.add(metadata.get().getClassName())) {
+            String superClassName = metadata.get().getSuperClassName();
+            metadata = superClassName == null ? Optional.empty() : testsReader.readTestClassDirClassMetadata(superClassName);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the number of forks for a retry round, rather than reusing the fork count of the initial round.
+ * <p>
+ * The tests of a class run in a single fork, so a round can't use more forks than it has classes,
+ * and its duration is at least that of its longest class. Starting a fork costs about as much time
+ * as it takes to get the first class running, so forks that would take less time than that to run
+ * their share of the classes are not worth starting.
+ * The fork count is therefore the total duration of the failed classes divided by the larger of
+ * the longest class and the fork startup cost, bounded by the configured maximum and the available cores.
+ * <p>
+ * Durations are measured as classes complete in any round. Classes without a measurement are assumed
+ * to take as long as the average measured class.
+ * <p>
+ * If {@code forkEvery} is ignored, the forks of a retry round are not restarted after {@code forkEvery} classes,
+ * so that each of them pays the startup cost once.
+ */
+final class RetryForkPlanner {
+
+    // assumed until a fork startup has been measured
+    static final long DEFAULT_FORK_STARTUP_MILLIS = 1000;
+
+    private final int maxParallelForks;
+    private final int availableProcessors;
+    private final boolean ignoreForkEvery;
+
+    private final Map<String, Long> classDurations = new ConcurrentHashMap<>();
+    private volatile long forkStartupMillis = -1;
+
+    RetryForkPlanner(int maxParallelForks) {
+        this(maxParallelForks, false);
+    }
+
+    RetryForkPlanner(int maxParallelForks, boolean ignoreForkEvery) {
+        this(maxParallelForks, Runtime.getRuntime().availableProcessors(), ignoreForkEvery);
+    }
+
+    RetryForkPlanner(int maxParallelForks, int availableProcessors) {
+        this(maxParallelForks, availableProcessors, false);
+    }
+
+    RetryForkPlanner(int maxParallelForks, int availableProcessors, boolean ignoreForkEvery) {
+        this.maxParallelForks = maxParallelForks;
+        this.availableProcessors = availableProcessors;
+        this.ignoreForkEvery = ignoreForkEvery;
+    }
+
+    void classCompleted(String className, long durationMillis) {
+        classDurations.put(className, Math.max(0, durationMillis));
+    }
+
+    void forkStarted(long startupMillis) {
+        if (forkStartupMillis < 0) {
+            forkStartupMillis = Math.max(0, startupMillis);
+        }
+    }
+
+    long forkEvery(long configuredForkEvery) {
+        return ignoreForkEvery ? 0 : configuredForkEvery;
+    }
+
+    int forks(TestNames failedTests) {
+        return forks(failedTests.classNames());
+    }
+
+    int forks(Collection<String> classNames) {
+        long assumedDuration = averageDuration(forkStartupMillis());
+        List<Long> durations = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            durations.add(classDurations.getOrDefault(className, assumedDuration));
+        }
+        return forksFor(durations);
+    }
+
+    /**
+     * The time a round takes to run classes that take the given time each, including starting its forks.
+     */
+    long estimateMillis(Collection<Long> durations) {
+        if (durations.isEmpty()) {
+            return 0;
+        }
+
+        int forks = forksFor(durations);
+        long total = 0;
+        long longest = 0;
+        for (long duration : durations) {
+            total += duration;
+            longest = Math.max(longest, duration);
+        }
+        return forkStartupMillis() + Math.max(longest, (total + forks - 1) / forks);
+    }
+
+    /**
+     * The time the given class took to run the last time it completed, or the assumed time if it has not been measured.
+     */
+    long classMillis(String className) {
+        return classDurations.getOrDefault(className, averageDuration(forkStartupMillis()));
+    }
+
+    private int forksFor(Collection<Long> durations) {
+        int limit = Math.min(durations.size(), Math.min(maxParallelForks, availableProcessors));
+        if (limit <= 1) {
+            return 1;
+        }
+
+        long forkStartup = forkStartupMillis();
+        long total = 0;
+        long longest = 0;
+        for (long duration : durations) {
+            total += duration;
+            longest = Math.max(longest, duration);
+        }
+
+        long perFork = Math.max(1, Math.max(longest, forkStartup));
+        long forks = (total + perFork - 1) / perFork;
+        return (int) Math.max(1, Math.min(limit, forks));
+    }
+
+    private long forkStartupMillis() {
+        return forkStartupMillis < 0 ? DEFAULT_FORK_STARTUP_MILLIS : forkStartupMillis;
+    }
+
+    /**
+     * The given classes that have been measured, longest first, at most {@code limit} of them.
+     */
+    List<String> longestFirst(Collection<String> classNames, int limit) {
+        List<String> measured = new ArrayList<>();
+        for (String className : classNames) {
+            if (classDurations.containsKey(className)) {
+                measured.add(className);
+            }
+        }
+        measured.sort(Comparator.comparing((String className) -> classDurations.get(className)).reversed());
+        return measured.size() > limit ? measured.subList(0, limit) : measured;
+    }
+
+    private long averageDuration(long defaultDuration) {
+        if (classDurations.isEmpty()) {
+            return defaultDuration;
+        }
+        long total = 0;
+        int count = 0;
+        for (long duration : classDurations.values()) {
+            total += duration;
+            count++;
+        }
+        return count == 0 ? defaultDuration : total / count;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.internal.tasks.testing.JvmTestExecutionSpec;
+import org.gradle.api.internal.tasks.testing.TestExecuter;
+import org.gradle.api.internal.tasks.testing.TestFramework;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.logging.Logger;
+import org.gradle.internal.work.WorkerLeaseService;
+import org.gradle.testretry.internal.executer.framework.TestFrameworkStrategy;
+import org.gradle.testretry.internal.filter.RetryFilter;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Retries the failed tests of classes while the round they failed in is still running.
+ * <p>
+ * Classes are handed over as soon as they complete, and are retried in batches by a separate test executer
+ * on a separate thread, until they pass or the maximum number of retries is reached.
+ * Classes that complete while a batch is being retried are collected into the next batch.
+ * <p>
+ * The thread needs a worker lease of its own, which is taken from the worker lease service of the build.
+ * If that is not possible, no lane is started and the rounds run one after the other.
+ * <p>
+ * A quarantine lane instead runs the quarantined classes alongside the first round of the other classes,
+ * once that round has started, and retries their failed tests until they pass or the maximum number of retries is reached.
+ */
+final class RetryLane {
+
+    private final TestExecuter<JvmTestExecutionSpec> executer;
+    private final Consumer<Runnable> workerThreadRunner;
+    private final JvmTestExecutionSpec spec;
+    private final TestFrameworkStrategy testFrameworkStrategy;
+    private final TestFrameworkTemplate frameworkTemplate;
+    private final RetryFilter filter;
+    private final RetryForkPlanner forkPlanner;
+    private final LaneTestResultProcessor laneTestResultProcessor;
+    private final int maxRetries;
+    private final int maxFailures;
+    private final boolean retryIdenticalFailures;
+    private final TestHistory history;
+    private final boolean quarantine;
+    private final Thread thread;
+
+    // guarded by this
+    private TestNames pending = new TestNames();
+    private boolean rootStarted;
+    private boolean finishing;
+    private boolean cancelled;
+    private boolean retried;
+    private boolean hasRetryFilteredFailures;
+    private final TestNames failedTests = new TestNames();
+    private final TestNames nonRetriedTests = new TestNames();
+    @Nullable
+    private Throwable failure;
+
+    private RetryLane(
+        TestExecuter<JvmTestExecutionSpec> executer,
+        Consumer<Runnable> workerThreadRunner,
+        JvmTestExecutionSpec spec,
+        TestFrameworkStrategy testFrameworkStrategy,
+        TestFrameworkTemplate frameworkTemplate,
+        RetryFilter filter,
+        RetryForkPlanner forkPlanner,
+        LaneTestResultProcessor laneTestResultProcessor,
+        int maxRetries,
+        int maxFailures,
+        boolean retryIdenticalFailures,
+        TestHistory history,
+        boolean quarantine
+    ) {
+        this.executer = executer;
+        this.workerThreadRunner = workerThreadRunner;
+        this.spec = spec;
+        this.testFrameworkStrategy = testFrameworkStrategy;
+        this.frameworkTemplate = frameworkTemplate;
+        this.filter = filter;
+        this.forkPlanner = forkPlanner;
+        this.laneTestResultProcessor = laneTestResultProcessor;
+        this.maxRetries = maxRetries;
+        this.maxFailures = maxFailures;
+        this.retryIdenticalFailures = retryIdenticalFailures;
+        this.history = history;
+        this.quarantine = quarantine;
+        this.thread = new Thread(this::run, (quarantine ? "Test quarantine lane for " : "Test retry lane for ") + frameworkTemplate.task.getPath());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts a lane that reports to the given processor, or returns null if the lane can't be run.
+     *
+     * @param testResultProcessor the processor of the test task, which must be safe to use from multiple threads
+     * @param rootTestDescriptorId the id of the root test of the round the classes are handed over from, once it has started
+     */
+    @Nullable
+    static RetryLane start(
+        TestExecuter<JvmTestExecutionSpec> executer,
+        JvmTestExecutionSpec spec,
+        TestFrameworkStrategy testFrameworkStrategy,
+        TestFrameworkTemplate frameworkTemplate,
+        RetryFilter filter,
+        RetryForkPlanner forkPlanner,
+        TestResultProcessor testResultProcessor,
+        Supplier<Object> rootTestDescriptorId,
+        int maxRetries,
+        int maxFailures,
+        boolean retryIdenticalFailures,
+        TestHistory history,
+        Logger logger
+    ) {
+        Consumer<Runnable> workerThreadRunner;
+        try {
+            workerThreadRunner = workerThreadRunner(frameworkTemplate);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            logger.info("Unable to retry tests while {} is running, retrying after it instead", frameworkTemplate.task.getPath(), e);
+            return null;
+        }
+        return start(
+            executer,
+            workerThreadRunner,
+            spec,
+            testFrameworkStrategy,
+            frameworkTemplate,
+            filter,
+            forkPlanner,
+            testResultProcessor,
+            rootTestDescriptorId,
+            maxRetries,
+            maxFailures,
+            retryIdenticalFailures,
+            history,
+            false
+        );
+    }
+
+    /**
+     * Starts a lane that runs the given spec of quarantined classes and retries their failed tests, or returns null if the lane can't be run.
+     * <p>
+     * The spec is not run before {@link #rootStarted()} is called, as its tests are reported as children of the root test.
+     *
+     * @param testResultProcessor the processor of the test task, which must be safe to use from multiple threads
+     * @param rootTestDescriptorId the id of the root test of the round the quarantined classes run alongside, once it has started
+     */
+    @Nullable
+    static RetryLane startQuarantine(
+        TestExecuter<JvmTestExecutionSpec> executer,
+        JvmTestExecutionSpec quarantineSpec,
+        TestFrameworkStrategy testFrameworkStrategy,
+        TestFrameworkTemplate frameworkTemplate,
+        RetryFilter filter,
+        RetryForkPlanner forkPlanner,
+        TestResultProcessor testResultProcessor,
+        Supplier<Object> rootTestDescriptorId,
+        int maxRetries,
+        int maxFailures,
+        boolean retryIdenticalFailures,
+        TestHistory history,
+        Logger logger
+    ) {
+        Consumer<Runnable> workerThreadRunner;
+        try {
+            workerThreadRunner = workerThreadRunner(frameworkTemplate);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            logger.info("Unable to run the quarantined tests of {} separately, running them with the other tests instead", frameworkTemplate.task.getPath(), e);
+            return null;
+        }
+        return start(
+            executer,
+            workerThreadRunner,
+            quarantineSpec,
+            testFrameworkStrategy,
+            frameworkTemplate,
+            filter,
+            forkPlanner,
+            testResultProcessor,
+            rootTestDescriptorId,
+            maxRetries,
+            maxFailures,
+            retryIdenticalFailures,
+            history,
+            true
+        );
+    }
+
+    private static RetryLane start(
+        TestExecuter<JvmTestExecutionSpec> executer,
+        Consumer<Runnable> workerThreadRunner,
+        JvmTestExecutionSpec spec,
+        TestFrameworkStrategy testFrameworkStrategy,
+        TestFrameworkTemplate frameworkTemplate,
+        RetryFilter filter,
+        RetryForkPlanner forkPlanner,
+        TestResultProcessor testResultProcessor,
+        Supplier<Object> rootTestDescriptorId,
+        int maxRetries,
+        int maxFailures,
+        boolean retryIdenticalFailures,
+        TestHistory history,
+        boolean quarantine
+    ) {
+
+        RetryLane lane = new RetryLane(
+            executer,
+            workerThreadRunner,
+            spec,
+            testFrameworkStrategy,
+            frameworkTemplate,
+            filter,
+            forkPlanner,
+            new LaneTestResultProcessor(testResultProcessor, rootTestDescriptorId),
+            maxRetries,
+            maxFailures,
+            retryIdenticalFailures,
+            history,
+            quarantine
+        );
+        lane.thread.start();
+        return lane;
+    }
+
+    /**
+     * Queues the failed tests of a class to be retried.
+     *
+     * @return false if the lane is no longer accepting tests
+     */
+    synchronized boolean retry(String className, Set<String> tests) {
+        if (finishing || failure != null) {
+            return false;
+        }
+        tests.forEach(test -> pending.add(className, test));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Lets a quarantine lane report its tests, as the root test they are reported under has started.
+     */
+    synchronized void rootStarted() {
+        rootStarted = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits for all queued tests to be retried.
+     */
+    Result finish() {
+        synchronized (this) {
+            finishing = true;
+            notifyAll();
+        }
+        awaitTermination();
+
+        synchronized (this) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+            return new Result(failedTests, nonRetriedTests, retried, hasRetryFilteredFailures);
+        }
+    }
+
+    /**
+     * Drops the queued tests and stops the running retry, without waiting for the results.
+     */
+    void cancel() {
+        synchronized (this) {
+            finishing = true;
+            cancelled = true;
+            pending = new TestNames();
+            notifyAll();
+        }
+        executer.stopNow();
+        awaitTermination();
+    }
+
+    void stopNow() {
+        executer.stopNow();
+    }
+
+    private void awaitTermination() {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            if (quarantine && awaitRootStarted()) {
+                workerThreadRunner.accept(this::runQuarantine);
+            }
+            TestNames batch;
+            while ((batch = takeBatch()) != null) {
+                TestNames tests = batch;
+                workerThreadRunner.accept(() -> retryBatch(tests));
+            }
+        } catch (Throwable t) {
+            synchronized (this) {
+                failure = t;
+            }
+        }
+    }
+
+    private synchronized boolean awaitRootStarted() throws InterruptedException {
+        while (!rootStarted && !finishing) {
+            wait();
+        }
+        return rootStarted && !cancelled;
+    }
+
+    @Nullable
+    private synchronized TestNames takeBatch() throws InterruptedException {
+        while (pending.isEmpty() && !finishing) {
+            wait();
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        TestNames batch = pending;
+        pending = new TestNames();
+        return batch;
+    }
+
+    private void retryBatch(TestNames batch) {
+        retry(newProcessor(), batch);
+    }
+
+    private void runQuarantine() {
+        RetryTestResultProcessor processor = newProcessor();
+        laneTestResultProcessor.startExecution();
+        executer.execute(spec, processor);
+
+        TestNames tests = remainingFailedTests(processor.getResult(), maxRetries == 0);
+        if (tests != null) {
+            retry(processor, tests);
+        }
+    }
+
+    private RetryTestResultProcessor newProcessor() {
+        RetryTestResultProcessor processor = new RetryTestResultProcessor(
+            testFrameworkStrategy,
+            filter,
+            frameworkTemplate.testsReader,
+            laneTestResultProcessor,
+            forkPlanner,
+            frameworkTemplate.filterCostModel,
+            maxFailures
+        );
+        processor.recordHistory(history);
+        return processor;
+    }
+
+    private void retry(RetryTestResultProcessor processor, TestNames failedTests) {
+        TestNames tests = failedTests;
+        for (int retryCount = 1; tests != null; retryCount++) {
+            processor.retry(tests, retryCount == maxRetries);
+            TestFramework retryTestFramework = testFrameworkStrategy.createRetrying(frameworkTemplate, tests);
+            laneTestResultProcessor.startExecution();
+            executer.execute(RetryTestExecuter.createRetryJvmExecutionSpec(spec, retryTestFramework, tests, frameworkTemplate.testsReader, forkPlanner), processor);
+
+            synchronized (this) {
+                retried = true;
+            }
+            tests = remainingFailedTests(processor.getResult(), false);
+        }
+    }
+
+    /**
+     * Records the outcome of an execution, returning the failed tests to retry, or null if there are none.
+     */
+    @Nullable
+    private synchronized TestNames remainingFailedTests(RoundResult result, boolean lastRound) {
+        nonRetriedTests.addAll(result.nonRetriedTests);
+        hasRetryFilteredFailures |= result.hasRetryFilteredFailures;
+        if (result.failedTests.isEmpty() || result.lastRound || lastRound || !result.nonRetriedTests.isEmpty()) {
+            failedTests.addAll(result.failedTests);
+            return null;
+        }
+        TestNames tests = result.failedTests;
+        if (!retryIdenticalFailures && !result.repeatedFailures.isEmpty()) {
+            // these failed the same way as before, so their failures are final
+            failedTests.addAll(result.repeatedFailures);
+            tests = tests.without(result.repeatedFailures);
+        }
+        if (!result.unpromisingFailures.isEmpty()) {
+            // earlier builds suggest that these won't pass, so their failures are final
+            failedTests.addAll(result.unpromisingFailures);
+            tests = tests.without(result.unpromisingFailures);
+        }
+        return tests.isEmpty() ? null : tests;
+    }
+
+    private static Consumer<Runnable> workerThreadRunner(TestFrameworkTemplate frameworkTemplate) throws NoSuchMethodException {
+        // older versions of Gradle can't make a thread of our own a worker thread
+        WorkerLeaseService.class.getMethod("runAsWorkerThread", Runnable.class);
+        WorkerLeaseService workerLeaseService = frameworkTemplate.objectFactory.newInstance(WorkerLeases.class).workerLeaseService;
+        return workerLeaseService::runAsWorkerThread;
+    }
+
+    static final class Result {
+
+        final TestNames failedTests;
+        final TestNames nonRetriedTests;
+        final boolean retried;
+        final boolean hasRetryFilteredFailures;
+
+        private Result(TestNames failedTests, TestNames nonRetriedTests, boolean retried, boolean hasRetryFilteredFailures) {
+            this.failedTests = failedTests;
+            this.nonRetriedTests = nonRetriedTests;
+            this.retried = retried;
+            this.hasRetryFilteredFailures = hasRetryFilteredFailures;
+        }
+    }
+}
@@ -15,19 +15,30 @@
  */
 package org.gradle.testretry.internal.executer;
 
+import org.gradle.api.file.FileTree;
 import org.gradle.api.internal.tasks.testing.JvmTestExecutionSpec;
 import org.gradle.api.internal.tasks.testing.TestExecuter;
 import org.gradle.api.internal.tasks.testing.TestFramework;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.filter.DefaultTestFilter;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.tasks.testing.Test;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.testretry.internal.config.TestRetryTaskExtensionAdapter;
 import org.gradle.testretry.internal.executer.framework.TestFrameworkStrategy;
 import org.gradle.testretry.internal.filter.AnnotationInspectorImpl;
+import org.gradle.testretry.internal.filter.FailureFilter;
 import org.gradle.testretry.internal.filter.RetryFilter;
+import org.gradle.testretry.internal.testsreader.ClassMetadataCache;
+import org.gradle.testretry.internal.testsreader.TestsReader;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -37,29 +48,43 @@ public final class RetryTestExecuter implements TestExecuter<JvmTestExecutionSpe
 
     private final TestRetryTaskExtensionAdapter extension;
     private final TestExecuter<JvmTestExecutionSpec> delegate;
+    @Nullable
+    private final TestExecuter<JvmTestExecutionSpec> laneDelegate;
+    @Nullable
+    private final TestExecuter<JvmTestExecutionSpec> quarantineDelegate;
     private final Test testTask;
     private final TestFrameworkTemplate frameworkTemplate;
 
     private RoundResult lastResult;
+    @Nullable
+    private volatile RetryLane activeLane;
+    @Nullable
+    private volatile RetryLane activeQuarantine;
 
     public RetryTestExecuter(
         Test task,
         TestRetryTaskExtensionAdapter extension,
         TestExecuter<JvmTestExecutionSpec> delegate,
+        @Nullable TestExecuter<JvmTestExecutionSpec> laneDelegate,
+        @Nullable TestExecuter<JvmTestExecutionSpec> quarantineDelegate,
         Instantiator instantiator,
         ObjectFactory objectFactory,
         Set<File> testClassesDir,
-        Set<File> resolvedClasspath
+        Set<File> resolvedClasspath,
+        @Nullable ClassMetadataCache classMetadataCache
     ) {
         this.extension = extension;
         this.delegate = delegate;
+        this.laneDelegate = laneDelegate;
+        this.quarantineDelegate = quarantineDelegate;
         this.testTask = task;
         this.frameworkTemplate = new TestFrameworkTemplate(
             testTask,
             instantiator,
             objectFactory,
             testClassesDir,
-            resolvedClasspath
+            resolvedClasspath,
+            classMetadataCache
         );
     }
 
@@ -81,42 +106,285 @@ public final class RetryTestExecuter implements TestExecuter<JvmTestExecutionSpe
             extension.getIncludeClasses(),
             extension.getIncludeAnnotationClasses(),
             extension.getExcludeClasses(),
-            extension.getExcludeAnnotationClasses()
+            extension.getExcludeAnnotationClasses(),
+            new FailureFilter(frameworkTemplate.testsReader, extension.getIncludeFailures(), extension.getExcludeFailures())
         );
 
+        boolean pipelined = laneDelegate != null || quarantineDelegate != null;
+        TestResultProcessor resultProcessor = pipelined ? new SynchronizedTestResultProcessor(testResultProcessor) : testResultProcessor;
+
+        RetryForkPlanner forkPlanner = new RetryForkPlanner(spec.getMaxParallelForks(), extension.getIgnoreForkEveryOnRetry());
+        if (forkPlanner.forkEvery(spec.getForkEvery()) != spec.getForkEvery()) {
+            testTask.getLogger().info("Retry rounds of {} ignore forkEvery = {}, so retried classes share their test worker JVMs", testTask.getPath(), spec.getForkEvery());
+        }
+        frameworkTemplate.filterCostModel.reset(filtersTests((DefaultTestFilter) testTask.getFilter()));
+
         RetryTestResultProcessor retryTestResultProcessor = new RetryTestResultProcessor(
             testFrameworkStrategy,
             filter,
             frameworkTemplate.testsReader,
-            testResultProcessor,
+            resultProcessor,
+            forkPlanner,
+            frameworkTemplate.filterCostModel,
             maxFailures
         );
 
-        int retryCount = 0;
-        JvmTestExecutionSpec testExecutionSpec = spec;
+        TestHistory history = extension.getUseTestHistory() ? TestHistory.load(testHistoryFile()) : TestHistory.NONE;
+        retryTestResultProcessor.recordHistory(history);
 
-        while (true) {
-            delegate.execute(testExecutionSpec, retryTestResultProcessor);
-            RoundResult result = retryTestResultProcessor.getResult();
-            lastResult = result;
+        try {
+            int retryCount = 0;
+            boolean retried = false;
+            boolean passed = false;
+            boolean retriedInLane = false;
+            boolean failedInLane = false;
+            boolean hasRetryFilteredFailuresInLane = false;
+            JvmTestExecutionSpec testExecutionSpec = spec;
 
-            if (extension.getSimulateNotRetryableTest() || !result.nonRetriedTests.isEmpty()) {
-                // fall through to our doLast action to fail accordingly
-                testTask.setIgnoreFailures(true);
-                break;
-            } else if (result.failedTests.isEmpty()) {
-                if (retryCount > 0 && !result.hasRetryFilteredFailures && !failOnPassedAfterRetry) {
+            JvmTestExecutionSpec retryInWorkerSpec = createRetryInWorkerSpec(spec, testFrameworkStrategy, failOnPassedAfterRetry);
+            if (retryInWorkerSpec != null) {
+                testExecutionSpec = retryInWorkerSpec;
+                retryTestResultProcessor.expectRetriesInWorker();
+            }
+
+            RetryBudget retryBudget = new RetryBudget(extension.getMaxRetryDuration().toMillis(), history);
+            if (retryBudget.isLimited()) {
+                retryTestResultProcessor.measureFailedTests();
+            }
+            boolean retryIdenticalFailures = extension.getRetryIdenticalFailures();
+            TestNames notRetriedFailures = new TestNames();
+
+            RoundStopThreshold stopThreshold = new RoundStopThreshold(extension.getStopAfterFailures(), extension.getStopAfterFailurePercentage());
+            if (stopThreshold.isEnabled()) {
+                retryTestResultProcessor.stopWhen(stopThreshold, this::stopNow);
+            }
+
+            if (quarantineDelegate != null) {
+                testExecutionSpec = startQuarantine(spec, testExecutionSpec, testFrameworkStrategy, filter, resultProcessor, retryTestResultProcessor, history);
+            }
+
+            if (laneDelegate != null) {
+                activeLane = RetryLane.start(
+                    laneDelegate,
+                    spec,
+                    testFrameworkStrategy,
+                    frameworkTemplate,
+                    filter,
+                    forkPlanner,
+                    resultProcessor,
+                    retryTestResultProcessor::getRootTestDescriptorId,
+                    maxRetries,
+                    maxFailures,
+                    retryIdenticalFailures,
+                    history,
+                    testTask.getLogger()
+                );
+                if (activeLane != null) {
+                    retryTestResultProcessor.pipelineWith(activeLane);
+                }
+            }
+
+            while (true) {
+                delegate.execute(testExecutionSpec, retryTestResultProcessor);
+                RoundResult result = retryTestResultProcessor.getResult();
+
+                RetryLane lane = activeLane;
+                if (lane != null) {
+                    RetryLane.Result laneResult = lane.finish();
+                    activeLane = null;
+                    retriedInLane = laneResult.retried;
+                    failedInLane = !laneResult.failedTests.isEmpty();
+                    hasRetryFilteredFailuresInLane = laneResult.hasRetryFilteredFailures;
+                    if (result.stopReason == null) {
+                        // a stopped round also stops the lane, leaving out some of its retries
+                        result.nonRetriedTests.addAll(laneResult.nonRetriedTests);
+                    }
+                }
+                lastResult = result;
+
+                if (extension.getSimulateNotRetryableTest() || !result.nonRetriedTests.isEmpty()) {
+                    // fall through to our doLast action to fail accordingly
                     testTask.setIgnoreFailures(true);
+                    break;
+                } else if (result.stopReason != null) {
+                    testTask.getLogger().warn("Stopped the tests of {} early as {}. Failed tests are not retried.", testTask.getPath(), result.stopReason);
+                    break;
+                } else if (result.failedTests.isEmpty()) {
+                    retried = retryCount > 0 || retriedInLane;
+                    boolean hasRetryFilteredFailures = result.hasRetryFilteredFailures || hasRetryFilteredFailuresInLane || !notRetriedFailures.isEmpty();
+                    passed = !failedInLane && !hasRetryFilteredFailures;
+                    break;
+                } else if (result.lastRound) {
+                    break;
+                } else {
+                    TestNames failedTests = result.failedTests;
+                    if (!retryIdenticalFailures && !result.repeatedFailures.isEmpty()) {
+                        logNotRetried(result.repeatedFailures, "they failed the same way as in their previous attempt");
+                        notRetriedFailures.addAll(result.repeatedFailures);
+                        failedTests = failedTests.without(result.repeatedFailures);
+                    }
+                    TestNames unpromisingFailures = retryIdenticalFailures ? result.unpromisingFailures : result.unpromisingFailures.without(result.repeatedFailures);
+                    if (!unpromisingFailures.isEmpty()) {
+                        logNotRetried(unpromisingFailures, "earlier builds suggest that retrying them again won't make them pass");
+                        notRetriedFailures.addAll(unpromisingFailures);
+                        failedTests = failedTests.without(unpromisingFailures);
+                    }
+
+                    TestNames leftOut = new TestNames();
+                    Map<String, Long> retryCosts = retryBudget.isLimited() ? retryCosts(result, testFrameworkStrategy, forkPlanner) : Collections.emptyMap();
+                    TestNames retriedTests = retryBudget.select(failedTests, retryCosts, forkPlanner, leftOut);
+                    if (!leftOut.isEmpty()) {
+                        logNotRetried(leftOut, "retrying them would exceed the retry time budget of " + retryBudget.getBudgetMillis() / 1000 + "s");
+                        notRetriedFailures.addAll(leftOut);
+                    }
+                    if (retriedTests.isEmpty()) {
+                        break;
+                    }
+
+                    TestFramework retryTestFramework = testFrameworkStrategy.createRetrying(frameworkTemplate, retriedTests);
+                    testExecutionSpec = createRetryJvmExecutionSpec(spec, retryTestFramework, retriedTests, frameworkTemplate.testsReader, forkPlanner);
+                    retryTestResultProcessor.reset(retriedTests, ++retryCount == maxRetries);
                 }
-                break;
-            } else if (result.lastRound) {
-                break;
-            } else {
-                TestFramework retryTestFramework = testFrameworkStrategy.createRetrying(frameworkTemplate, result.failedTests);
-                testExecutionSpec = createRetryJvmExecutionSpec(spec, retryTestFramework);
-                retryTestResultProcessor.reset(++retryCount == maxRetries);
             }
+
+            RetryLane quarantine = activeQuarantine;
+            if (quarantine != null) {
+                RetryLane.Result quarantineResult = quarantine.finish();
+                activeQuarantine = null;
+                retried |= quarantineResult.retried;
+                passed &= quarantineResult.failedTests.isEmpty() && !quarantineResult.hasRetryFilteredFailures;
+                if (lastResult.stopReason == null && !quarantineResult.nonRetriedTests.isEmpty()) {
+                    // a stopped round also stops the quarantine, leaving out some of its retries
+                    lastResult.nonRetriedTests.addAll(quarantineResult.nonRetriedTests);
+                    testTask.setIgnoreFailures(true);
+                }
+            }
+
+            if (retried && passed && !failOnPassedAfterRetry) {
+                testTask.setIgnoreFailures(true);
+            }
+
+            retryTestResultProcessor.releaseRootCompletion();
+        } finally {
+            RetryLane lane = activeLane;
+            if (lane != null) {
+                activeLane = null;
+                lane.cancel();
+            }
+            RetryLane quarantine = activeQuarantine;
+            if (quarantine != null) {
+                activeQuarantine = null;
+                quarantine.cancel();
+            }
+            history.store();
+            frameworkTemplate.testsReader.close();
+            testTask.getLogger().info(
+                "Retry filter decisions for {}: {} cache hits, {} cache misses, {}ms spent inspecting annotations",
+                testTask.getPath(),
+                filter.getCacheHits(),
+                filter.getCacheMisses(),
+                filter.getAnnotationInspectionMillis()
+            );
+        }
+    }
+
+    /**
+     * Starts running the quarantined classes in a lane of their own, returning the spec of the other classes.
+     * <p>
+     * If no classes are quarantined or the lane can't be run, the quarantined classes run with the other classes.
+     */
+    private JvmTestExecutionSpec startQuarantine(
+        JvmTestExecutionSpec spec,
+        JvmTestExecutionSpec testExecutionSpec,
+        TestFrameworkStrategy testFrameworkStrategy,
+        RetryFilter filter,
+        TestResultProcessor resultProcessor,
+        RetryTestResultProcessor retryTestResultProcessor,
+        TestHistory history
+    ) {
+        Quarantine quarantine = new Quarantine(
+            new AnnotationInspectorImpl(frameworkTemplate.testsReader),
+            extension.getQuarantineClasses(),
+            extension.getQuarantineAnnotationClasses()
+        );
+        Set<String> quarantinedClasses = quarantine.classNames(spec.getCandidateClassFiles());
+        if (quarantinedClasses.isEmpty()) {
+            return testExecutionSpec;
+        }
+
+        JvmTestExecutionSpec quarantineSpec = copy(
+            spec,
+            testFrameworkStrategy.createCopy(frameworkTemplate),
+            spec.getClasspath(),
+            Quarantine.include(spec.getCandidateClassFiles(), quarantinedClasses),
+            spec.getForkEvery(),
+            1
+        );
+        RetryLane lane = RetryLane.startQuarantine(
+            quarantineDelegate,
+            quarantineSpec,
+            testFrameworkStrategy,
+            frameworkTemplate,
+            filter,
+            // the retries of the quarantined classes stay in a single fork too
+            new RetryForkPlanner(1, extension.getIgnoreForkEveryOnRetry()),
+            resultProcessor,
+            retryTestResultProcessor::getRootTestDescriptorId,
+            extension.getQuarantineMaxRetries(),
+            extension.getMaxFailures(),
+            extension.getRetryIdenticalFailures(),
+            history,
+            testTask.getLogger()
+        );
+        if (lane == null) {
+            return testExecutionSpec;
         }
+
+        activeQuarantine = lane;
+        retryTestResultProcessor.holdRootCompletion();
+        retryTestResultProcessor.whenRootStarted(lane::rootStarted);
+        testTask.getLogger().info("Running {} quarantined test classes of {} separately", quarantinedClasses.size(), testTask.getPath());
+        return copy(
+            testExecutionSpec,
+            testExecutionSpec.getTestFramework(),
+            testExecutionSpec.getClasspath(),
+            Quarantine.exclude(testExecutionSpec.getCandidateClassFiles(), quarantinedClasses),
+            testExecutionSpec.getForkEvery(),
+            testExecutionSpec.getMaxParallelForks()
+        );
+    }
+
+    private static boolean filtersTests(DefaultTestFilter filter) {
+        return !filter.getIncludePatterns().isEmpty()
+            || !filter.getExcludePatterns().isEmpty()
+            || !filter.getCommandLineIncludePatterns().isEmpty();
+    }
+
+    private File testHistoryFile() {
+        File file = extension.getTestHistoryFile();
+        return file == null ? new File(testTask.getTemporaryDir(), "test-retry-history.bin") : file;
+    }
+
+    private Map<String, Long> retryCosts(RoundResult result, TestFrameworkStrategy testFrameworkStrategy, RetryForkPlanner forkPlanner) {
+        Map<String, Long> costs = new HashMap<>();
+        result.failedTests.forEach((className, tests) -> {
+            Long failedTestMillis = result.failedTestMillis.get(className);
+            boolean retriedAsWhole = tests.stream()
+                .anyMatch(test -> testFrameworkStrategy.isLifecycleFailureTest(frameworkTemplate.testsReader, className, test));
+            costs.put(className, failedTestMillis == null || retriedAsWhole ? forkPlanner.classMillis(className) : failedTestMillis);
+        });
+        return costs;
+    }
+
+    private void logNotRetried(TestNames tests, String reason) {
+        testTask.getLogger().warn("Not retrying {} failed tests of {}, as {}:{}",
+            tests.size(),
+            testTask.getPath(),
+            reason,
+            tests.stream()
+                .flatMap(entry -> entry.getValue().stream().map(methodName -> "   " + entry.getKey() + "#" + methodName))
+                .collect(Collectors.joining("\n", "\n", ""))
+        );
     }
 
     public void failWithNonRetriedTestsIfAny() {
@@ -132,36 +400,84 @@ public final class RetryTestExecuter implements TestExecuter<JvmTestExecutionSpe
         return lastResult != null && !lastResult.nonRetriedTests.isEmpty();
     }
 
-    private JvmTestExecutionSpec createRetryJvmExecutionSpec(JvmTestExecutionSpec spec, TestFramework retryTestFramework) {
+    @Nullable
+    private JvmTestExecutionSpec createRetryInWorkerSpec(JvmTestExecutionSpec spec, TestFrameworkStrategy testFrameworkStrategy, boolean failOnPassedAfterRetry) {
+        if (!extension.getRetryInWorker()) {
+            return null;
+        } else if (failOnPassedAfterRetry) {
+            testTask.getLogger().info("Not retrying failed tests of {} in the test worker, as tests that pass on retry should fail the task", testTask.getPath());
+            return null;
+        }
+
+        TestFramework testFramework = testFrameworkStrategy.createRetryingInWorker(frameworkTemplate);
+        if (testFramework == null) {
+            testTask.getLogger().info("Not retrying failed tests of {} in the test worker, as the test framework does not support it", testTask.getPath());
+            return null;
+        }
+
+        File workerJar = WorkerRetryJar.write(
+            new File(testTask.getTemporaryDir(), "test-retry-worker.jar"),
+            extension,
+            testFrameworkStrategy.getWorkerClassNames()
+        );
+        List<File> classpath = new ArrayList<>();
+        spec.getClasspath().forEach(classpath::add);
+        classpath.add(workerJar);
+
+        return copy(spec, testFramework, classpath, spec.getCandidateClassFiles(), spec.getForkEvery(), spec.getMaxParallelForks());
+    }
+
+    static JvmTestExecutionSpec createRetryJvmExecutionSpec(
+        JvmTestExecutionSpec spec,
+        TestFramework retryTestFramework,
+        TestNames failedTests,
+        TestsReader testsReader,
+        RetryForkPlanner forkPlanner
+    ) {
+        int maxParallelForks = forkPlanner.forks(failedTests);
+        FileTree candidateClassFiles = RetryCandidateClassFiles.narrow(spec.getCandidateClassFiles(), failedTests, testsReader);
+        candidateClassFiles = LongestFirstClassOrder.order(candidateClassFiles, failedTests, forkPlanner, maxParallelForks);
+        long forkEvery = forkPlanner.forkEvery(spec.getForkEvery());
+        return copy(spec, retryTestFramework, spec.getClasspath(), candidateClassFiles, forkEvery, maxParallelForks);
+    }
+
+    private static JvmTestExecutionSpec copy(
+        JvmTestExecutionSpec spec,
+        TestFramework testFramework,
+        Iterable<? extends File> classpath,
+        FileTree candidateClassFiles,
+        long forkEvery,
+        int maxParallelForks
+    ) {
         if (gradleVersionIsAtLeast("6.4")) {
             // This constructor is in Gradle 6.4+
             return new JvmTestExecutionSpec(
-                retryTestFramework,
-                spec.getClasspath(),
+                testFramework,
+                classpath,
                 spec.getModulePath(),
-                spec.getCandidateClassFiles(),
+                candidateClassFiles,
                 spec.isScanForTestClasses(),
                 spec.getTestClassesDirs(),
                 spec.getPath(),
                 spec.getIdentityPath(),
-                spec.getForkEvery(),
+                forkEvery,
                 spec.getJavaForkOptions(),
-                spec.getMaxParallelForks(),
+                maxParallelForks,
                 spec.getPreviousFailedTestClasses()
             );
         } else {
             // This constructor is in Gradle 4.7+
             return new JvmTestExecutionSpec(
-                retryTestFramework,
-                spec.getClasspath(),
-                spec.getCandidateClassFiles(),
+                testFramework,
+                classpath,
+                candidateClassFiles,
                 spec.isScanForTestClasses(),
                 spec.getTestClassesDirs(),
                 spec.getPath(),
                 spec.getIdentityPath(),
-                spec.getForkEvery(),
+                forkEvery,
                 spec.getJavaForkOptions(),
-                spec.getMaxParallelForks(),
+                maxParallelForks,
                 spec.getPreviousFailedTestClasses()
             );
         }
@@ -170,5 +486,13 @@ public final class RetryTestExecuter implements TestExecuter<JvmTestExecutionSpe
     @Override
     public void stopNow() {
         delegate.stopNow();
+        RetryLane lane = activeLane;
+        if (lane != null) {
+            lane.stopNow();
+        }
+        RetryLane quarantine = activeQuarantine;
+        if (quarantine != null) {
+            quarantine.stopNow();
+        }
     }
 }
@@ -25,10 +25,12 @@ import org.gradle.testretry.internal.executer.framework.TestFrameworkStrategy;
 import org.gradle.testretry.internal.filter.RetryFilter;
 import org.gradle.testretry.internal.testsreader.TestsReader;
 
-import java.lang.reflect.Method;
+import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
+import static org.gradle.api.tasks.testing.TestResult.ResultType.FAILURE;
 import static org.gradle.api.tasks.testing.TestResult.ResultType.SKIPPED;
 
 final class RetryTestResultProcessor implements TestResultProcessor {
@@ -37,53 +39,125 @@ final class RetryTestResultProcessor implements TestResultProcessor {
     private final RetryFilter filter;
     private final TestsReader testsReader;
     private final TestResultProcessor delegate;
+    private final RetryForkPlanner forkPlanner;
+    private final TestFilterCostModel filterCostModel;
 
     private final int maxFailures;
     private boolean lastRetry;
     private boolean hasRetryFilteredFailures;
-    private Method failureMethod;
+    private boolean retriesInWorker;
 
-    private final Map<Object, TestDescriptorInternal> activeDescriptorsById = new HashMap<>();
+    private final LegacyFailureMethod legacyFailure;
+
+    private final ActiveDescriptors activeDescriptors = new ActiveDescriptors();
 
     private TestNames currentRoundFailedTests = new TestNames();
     private TestNames previousRoundFailedTests = new TestNames();
+    // tests that failed in a way that is not retried, so that other failures of theirs in the round don't count
+    private TestNames unretryableFailedTests = new TestNames();
+
+    // of the failures of each test in the current and the previous round, by class and test name
+    private Map<String, Map<String, Long>> currentFailureFingerprints = new HashMap<>();
+    private Map<String, Map<String, Long>> previousFailureFingerprints = new HashMap<>();
 
     private Object rootTestDescriptorId;
 
+    // measured for the fork planner and the filter cost model, with the start times of classes kept in activeDescriptors
+    private long roundStartTime;
+    private boolean classStartedInRound;
+
+    // measured for the retry budget, if it is limited, with the start times of tests kept in activeDescriptors
+    private boolean measureFailedTests;
+    private Map<String, Long> failedTestMillis = new HashMap<>();
+
+    // set while classes that completed in the current round are retried by a pipelined retry lane
+    @Nullable
+    private RetryLane retryLane;
+    private int handedOffFailures;
+    private boolean holdRootCompletion;
+    @Nullable
+    private TestCompleteEvent heldRootCompletion;
+    @Nullable
+    private Runnable rootStartedAction;
+
+    // set if rounds are stopped early once too many of their tests fail
+    private RoundStopThreshold stopThreshold = RoundStopThreshold.NONE;
+    private Runnable stopRound;
+    private int completedTestsInRound;
+    private int failedTestsInRound;
+    @Nullable
+    private String stopReason;
+
+    // the outcomes of tests in earlier builds, and the retries of the current tests in this build
+    private TestHistory history = TestHistory.NONE;
+    private int retries;
+
     RetryTestResultProcessor(
         TestFrameworkStrategy testFrameworkStrategy,
         RetryFilter filter,
         TestsReader testsReader,
         TestResultProcessor delegate,
+        RetryForkPlanner forkPlanner,
+        TestFilterCostModel filterCostModel,
         int maxFailures
     ) {
         this.testFrameworkStrategy = testFrameworkStrategy;
         this.filter = filter;
         this.testsReader = testsReader;
         this.delegate = delegate;
+        this.forkPlanner = forkPlanner;
+        this.filterCostModel = filterCostModel;
         this.maxFailures = maxFailures;
+        this.legacyFailure = LegacyFailureMethod.of(delegate);
     }
 
     @Override
     public void started(TestDescriptorInternal descriptor, TestStartEvent testStartEvent) {
         if (rootTestDescriptorId == null) {
             rootTestDescriptorId = descriptor.getId();
-            activeDescriptorsById.put(descriptor.getId(), descriptor);
+            roundStartTime = testStartEvent.getStartTime();
+            activeDescriptors.put(descriptor);
             delegate.started(descriptor, testStartEvent);
-        } else if (!descriptor.getId().equals(rootTestDescriptorId)) {
-            activeDescriptorsById.put(descriptor.getId(), descriptor);
+            if (rootStartedAction != null) {
+                rootStartedAction.run();
+            }
+        } else if (descriptor.getId().equals(rootTestDescriptorId)) {
+            roundStartTime = testStartEvent.getStartTime();
+        } else {
+            long startTime = ActiveDescriptors.NO_START_TIME;
+            if (ActiveDescriptors.isClass(descriptor)) {
+                startTime = testStartEvent.getStartTime();
+                classStarted(startTime);
+            } else if (!descriptor.isComposite() && measuresTests()) {
+                startTime = testStartEvent.getStartTime();
+            }
+            activeDescriptors.put(descriptor, testStartEvent.getParentId(), startTime);
             delegate.started(descriptor, testStartEvent);
         }
     }
 
+    private void classStarted(long startTime) {
+        if (!classStartedInRound) {
+            classStartedInRound = true;
+            forkPlanner.forkStarted(startTime - roundStartTime);
+        }
+    }
+
     @Override
     public void completed(Object testId, TestCompleteEvent testCompleteEvent) {
+        String completedClassName = null;
         if (testId.equals(rootTestDescriptorId)) {
-            if (!lastRun()) {
+            if (!lastRun() || holdRootCompletion) {
+                // the executer may still decide against another round
+                heldRootCompletion = testCompleteEvent;
                 return;
             }
+            heldRootCompletion = null;
         } else {
-            TestDescriptorInternal descriptor = activeDescriptorsById.remove(testId);
+            long startTime = activeDescriptors.getStartTime(testId);
+            int testCount = activeDescriptors.getTestCount(testId);
+            Object parentId = activeDescriptors.getParentId(testId);
+            TestDescriptorInternal descriptor = activeDescriptors.remove(testId);
             if (descriptor != null && descriptor.getClassName() != null) {
                 String className = descriptor.getClassName();
                 String name = descriptor.getName();
@@ -93,7 +167,14 @@ final class RetryTestResultProcessor implements TestResultProcessor {
                     currentRoundFailedTests.add(className, name);
                 }
 
-                if (isClassDescriptor(descriptor)) {
+                if (ActiveDescriptors.isClass(descriptor)) {
+                    if (startTime != ActiveDescriptors.NO_START_TIME) {
+                        long durationMillis = testCompleteEvent.getEndTime() - startTime;
+                        forkPlanner.classCompleted(className, durationMillis);
+                        if (measuresWholeClasses()) {
+                            filterCostModel.classCompleted(className, testCount, durationMillis);
+                        }
+                    }
                     previousRoundFailedTests.remove(className, n -> {
                         if (testFrameworkStrategy.isLifecycleFailureTest(testsReader, className, n)) {
                             emitFakePassedEvent(descriptor, testCompleteEvent, n);
@@ -102,12 +183,125 @@ final class RetryTestResultProcessor implements TestResultProcessor {
                             return false;
                         }
                     });
+                    completedClassName = className;
+                } else if (!descriptor.isComposite()) {
+                    if (measuresWholeClasses()) {
+                        activeDescriptors.countTest(parentId);
+                    }
+                    if (startTime != ActiveDescriptors.NO_START_TIME && testCompleteEvent.getResultType() != SKIPPED) {
+                        boolean failed = testCompleteEvent.getResultType() == FAILURE;
+                        long durationMillis = Math.max(0, testCompleteEvent.getEndTime() - startTime);
+                        if (failed && measureFailedTests) {
+                            failedTestMillis.merge(className, durationMillis, Long::sum);
+                        }
+                        history.testCompleted(className, name, failedInPreviousRound, failed, durationMillis, failureFingerprint(className, name));
+                    }
+                    testCompleted(testCompleteEvent);
                 }
-
             }
         }
 
         delegate.completed(testId, testCompleteEvent);
+
+        if (retryLane != null && completedClassName != null) {
+            handOff(completedClassName);
+        }
+    }
+
+    private void testCompleted(TestCompleteEvent testCompleteEvent) {
+        completedTestsInRound++;
+        if (testCompleteEvent.getResultType() == FAILURE) {
+            failedTestsInRound++;
+        }
+        if (stopReason == null && stopThreshold.isExceeded(failedTestsInRound, completedTestsInRound)) {
+            stopReason = failedTestsInRound + " of " + completedTestsInRound + " completed tests failed";
+            stopRound.run();
+        }
+    }
+
+    /**
+     * Stops each round as soon as the failed tests exceed the given threshold, using the given action.
+     * <p>
+     * A stopped round is the last one, and the tests that failed in the rounds before it are not considered to be left out.
+     */
+    void stopWhen(RoundStopThreshold stopThreshold, Runnable stopRound) {
+        this.stopThreshold = stopThreshold;
+        this.stopRound = stopRound;
+    }
+
+    void recordHistory(TestHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Measures the time spent in failed tests of each class, as needed by a limited {@link RetryBudget}.
+     */
+    void measureFailedTests() {
+        this.measureFailedTests = true;
+    }
+
+    private boolean measuresTests() {
+        return measureFailedTests || history.isEnabled();
+    }
+
+    // only the first round runs whole classes
+    private boolean measuresWholeClasses() {
+        return retries == 0 && filterCostModel.isMeasuring();
+    }
+
+    void expectRetriesInWorker() {
+        this.retriesInWorker = true;
+    }
+
+    /**
+     * Retries the classes that complete with failures in the current round while the round is still running,
+     * instead of at the end of the round.
+     * <p>
+     * The completion of the root test is held back from then on, and needs to be released once the lane has finished.
+     */
+    void pipelineWith(RetryLane retryLane) {
+        this.retryLane = retryLane;
+        this.holdRootCompletion = true;
+    }
+
+    /**
+     * Holds back the completion of the root test until it is released, for tests that are reported as its children from elsewhere.
+     */
+    void holdRootCompletion() {
+        this.holdRootCompletion = true;
+    }
+
+    /**
+     * Runs the given action once the root test has started, on the thread that reports it.
+     */
+    void whenRootStarted(Runnable action) {
+        this.rootStartedAction = action;
+    }
+
+    private void handOff(String className) {
+        if (currentRoundFailedTestsExceedsMaxFailures() || stopReason != null) {
+            // this round won't be retried
+            return;
+        }
+        Set<String> tests = currentRoundFailedTests.remove(className);
+        if (tests != null) {
+            if (retryLane.retry(className, tests)) {
+                handedOffFailures += tests.size();
+            } else {
+                tests.forEach(test -> currentRoundFailedTests.add(className, test));
+            }
+        }
+    }
+
+    Object getRootTestDescriptorId() {
+        return rootTestDescriptorId;
+    }
+
+    void releaseRootCompletion() {
+        if (heldRootCompletion != null) {
+            delegate.completed(rootTestDescriptorId, heldRootCompletion);
+            heldRootCompletion = null;
+        }
     }
 
     private void emitFakePassedEvent(TestDescriptorInternal parent, TestCompleteEvent parentEvent, String name) {
@@ -118,10 +312,6 @@ final class RetryTestResultProcessor implements TestResultProcessor {
         delegate.completed(syntheticTestId, new TestCompleteEvent(timestamp));
     }
 
-    private boolean isClassDescriptor(TestDescriptorInternal descriptor) {
-        return descriptor.getClassName() != null && descriptor.getClassName().equals(descriptor.getName());
-    }
-
     @Override
     public void output(Object testId, TestOutputEvent testOutputEvent) {
         delegate.output(testId, testOutputEvent);
@@ -131,38 +321,41 @@ final class RetryTestResultProcessor implements TestResultProcessor {
     public void failure(Object testId, Throwable throwable) {
         // Gradle 7.6 changed the method signature from failure(Object, Throwable) to failure(Object, TestFailure).
         // To maintain compatibility with older versions, the original method needs to exist and needs to call failure()
-        // on the delegate via reflection.
-        failure(testId);
-        try {
-            Method failureMethod = lookupFailureMethod();
-            failureMethod.invoke(delegate, testId, throwable);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private Method lookupFailureMethod() throws ReflectiveOperationException {
-        if (failureMethod == null) {
-            failureMethod = delegate.getClass().getMethod("failure", Object.class, Throwable.class);
-        }
-        return failureMethod;
+        // on the delegate via a method handle that is bound once.
+        handleFailure(testId, throwable);
+        legacyFailure.invoke(testId, throwable);
     }
 
     @Override
     public void failure(Object testId, TestFailure result) {
-        failure(testId);
+        handleFailure(testId, result.getRawFailure());
         delegate.failure(testId, result);
     }
 
-    private void failure(Object testId) {
-        final TestDescriptorInternal descriptor = activeDescriptorsById.get(testId);
+    private void handleFailure(Object testId, Throwable failure) {
+        final TestDescriptorInternal descriptor = activeDescriptors.get(testId);
         if (descriptor != null) {
             String className = descriptor.getClassName();
             if (className != null) {
-                if (filter.canRetry(className)) {
-                    currentRoundFailedTests.add(className, descriptor.getName());
-                } else {
+                String name = descriptor.getName();
+                if (!filter.canRetry(className)) {
+                    hasRetryFilteredFailures = true;
+                } else if (retriesInWorker && testFrameworkStrategy.isRetriedInWorker(testsReader, className, name)) {
+                    // retried in the worker as often as allowed already, so the failure is final like a filtered one
+                    hasRetryFilteredFailures = true;
+                } else if (filter.filtersFailures() && (unretryableFailedTests.contains(className, name) || !filter.canRetry(failure))) {
+                    // a test that also failed in a way that won't pass on a retry isn't worth a fork
                     hasRetryFilteredFailures = true;
+                    unretryableFailedTests.add(className, name);
+                    currentRoundFailedTests.remove(className, name);
+                    Map<String, Long> fingerprints = currentFailureFingerprints.get(className);
+                    if (fingerprints != null) {
+                        fingerprints.remove(name);
+                    }
+                } else {
+                    currentRoundFailedTests.add(className, name);
+                    currentFailureFingerprints.computeIfAbsent(className, c -> new HashMap<>())
+                        .merge(name, FailureFingerprint.of(failure), FailureFingerprint::combine);
                 }
             }
         }
@@ -171,26 +364,92 @@ final class RetryTestResultProcessor implements TestResultProcessor {
     private boolean lastRun() {
         return currentRoundFailedTests.isEmpty()
             || lastRetry
-            || currentRoundFailedTestsExceedsMaxFailures();
+            || currentRoundFailedTestsExceedsMaxFailures()
+            || stopReason != null;
     }
 
     private boolean currentRoundFailedTestsExceedsMaxFailures() {
-        return maxFailures > 0 && currentRoundFailedTests.size() >= maxFailures;
+        return maxFailures > 0 && currentRoundFailedTests.size() + handedOffFailures >= maxFailures;
     }
 
     public RoundResult getResult() {
-        return new RoundResult(currentRoundFailedTests, previousRoundFailedTests, lastRun(), hasRetryFilteredFailures);
+        // tests that failed before a stopped round may not have run in it, which is expected
+        TestNames nonRetriedTests = stopReason == null ? previousRoundFailedTests : new TestNames();
+        return new RoundResult(
+            currentRoundFailedTests,
+            nonRetriedTests,
+            repeatedFailures(),
+            unpromisingFailures(),
+            failedTestMillis,
+            lastRun(),
+            hasRetryFilteredFailures,
+            stopReason
+        );
+    }
+
+    private TestNames repeatedFailures() {
+        TestNames repeatedFailures = new TestNames();
+        currentFailureFingerprints.forEach((className, fingerprints) -> {
+            Map<String, Long> previousFingerprints = previousFailureFingerprints.get(className);
+            if (previousFingerprints != null) {
+                fingerprints.forEach((testName, fingerprint) -> {
+                    if (fingerprint.equals(previousFingerprints.get(testName))) {
+                        repeatedFailures.add(className, testName);
+                    }
+                });
+            }
+        });
+        return repeatedFailures;
+    }
+
+    private TestNames unpromisingFailures() {
+        TestNames unpromisingFailures = new TestNames();
+        if (history.isEnabled()) {
+            currentFailureFingerprints.forEach((className, fingerprints) -> fingerprints.forEach((testName, fingerprint) -> {
+                if (currentRoundFailedTests.contains(className, testName) && !history.isWorthRetrying(className, testName, retries, fingerprint)) {
+                    unpromisingFailures.add(className, testName);
+                }
+            }));
+        }
+        return unpromisingFailures;
     }
 
-    public void reset(boolean lastRetry) {
+    private long failureFingerprint(String className, String testName) {
+        Map<String, Long> fingerprints = currentFailureFingerprints.get(className);
+        Long fingerprint = fingerprints == null ? null : fingerprints.get(testName);
+        return fingerprint == null ? 0 : fingerprint;
+    }
+
+    /**
+     * Prepares for a round that retries the given failed tests of the current round, which may be all of them.
+     */
+    public void reset(TestNames retriedTests, boolean lastRetry) {
         if (lastRun()) {
             throw new IllegalStateException("processor has completed");
         }
 
+        retry(retriedTests, lastRetry);
+    }
+
+    /**
+     * Prepares for a round that retries the given tests.
+     */
+    void retry(TestNames failedTests, boolean lastRetry) {
         this.lastRetry = lastRetry;
-        this.previousRoundFailedTests = currentRoundFailedTests;
+        this.retries++;
+        this.previousRoundFailedTests = failedTests;
         this.currentRoundFailedTests = new TestNames();
-        this.activeDescriptorsById.clear();
+        this.unretryableFailedTests = new TestNames();
+        this.previousFailureFingerprints = currentFailureFingerprints;
+        this.currentFailureFingerprints = new HashMap<>();
+        this.activeDescriptors.clear();
+        this.failedTestMillis = new HashMap<>();
+        this.completedTestsInRound = 0;
+        this.failedTestsInRound = 0;
+        this.classStartedInRound = false;
+        this.retryLane = null;
+        this.handedOffFailures = 0;
+        this.retriesInWorker = false;
     }
 
 }
@@ -15,22 +15,42 @@
  */
 package org.gradle.testretry.internal.executer;
 
+import javax.annotation.Nullable;
+import java.util.Map;
+
 final class RoundResult {
 
     final TestNames failedTests;
     final TestNames nonRetriedTests;
+    // the failed tests that failed the same way in their previous attempt
+    final TestNames repeatedFailures;
+    // the failed tests that, judging by earlier builds, are not worth retrying again
+    final TestNames unpromisingFailures;
+    // the summed durations of the failed tests of each class
+    final Map<String, Long> failedTestMillis;
     final boolean lastRound;
     final boolean hasRetryFilteredFailures;
+    // why the round was stopped before it completed, if it was
+    @Nullable
+    final String stopReason;
 
     RoundResult(
         TestNames failedTests,
         TestNames nonRetriedTests,
+        TestNames repeatedFailures,
+        TestNames unpromisingFailures,
+        Map<String, Long> failedTestMillis,
         boolean lastRound,
-        boolean hasRetryFilteredFailures
+        boolean hasRetryFilteredFailures,
+        @Nullable String stopReason
     ) {
         this.failedTests = failedTests;
         this.nonRetriedTests = nonRetriedTests;
+        this.repeatedFailures = repeatedFailures;
+        this.unpromisingFailures = unpromisingFailures;
+        this.failedTestMillis = failedTestMillis;
         this.lastRound = lastRound;
         this.hasRetryFilteredFailures = hasRetryFilteredFailures;
+        this.stopReason = stopReason;
     }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+/**
+ * Decides when a round fails so thoroughly that it is stopped before it has completed.
+ */
+final class RoundStopThreshold {
+
+    // a percentage of fewer completed tests says little about the rest of the round
+    static final int MIN_COMPLETED_TESTS_FOR_PERCENTAGE = 20;
+
+    static final RoundStopThreshold NONE = new RoundStopThreshold(0, 0);
+
+    private final int failedTests;
+    private final int failedTestsPercentage;
+
+    RoundStopThreshold(int failedTests, int failedTestsPercentage) {
+        this.failedTests = failedTests;
+        this.failedTestsPercentage = failedTestsPercentage;
+    }
+
+    boolean isEnabled() {
+        return failedTests > 0 || failedTestsPercentage > 0;
+    }
+
+    boolean isExceeded(int failed, int completed) {
+        if (failedTests > 0 && failed >= failedTests) {
+            return true;
+        }
+        return failedTestsPercentage > 0
+            && completed >= MIN_COMPLETED_TESTS_FOR_PERCENTAGE
+            && failed * 100L >= (long) failedTestsPercentage * completed;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestFailure;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+
+/**
+ * Serializes the events of the initial round and of a {@link RetryLane}, which report to the same processor.
+ */
+final class SynchronizedTestResultProcessor implements TestResultProcessor {
+
+    private final TestResultProcessor delegate;
+    private final LegacyFailureMethod legacyFailure;
+
+    SynchronizedTestResultProcessor(TestResultProcessor delegate) {
+        this.delegate = delegate;
+        this.legacyFailure = LegacyFailureMethod.of(delegate);
+    }
+
+    @Override
+    public synchronized void started(TestDescriptorInternal descriptor, TestStartEvent testStartEvent) {
+        delegate.started(descriptor, testStartEvent);
+    }
+
+    @Override
+    public synchronized void completed(Object testId, TestCompleteEvent testCompleteEvent) {
+        delegate.completed(testId, testCompleteEvent);
+    }
+
+    @Override
+    public synchronized void output(Object testId, TestOutputEvent testOutputEvent) {
+        delegate.output(testId, testOutputEvent);
+    }
+
+    @SuppressWarnings("unused")
+    public synchronized void failure(Object testId, Throwable throwable) {
+        // see RetryTestResultProcessor.failure(Object, Throwable)
+        legacyFailure.invoke(testId, throwable);
+    }
+
+    @Override
+    public synchronized void failure(Object testId, TestFailure result) {
+        delegate.failure(testId, result);
+    }
+}
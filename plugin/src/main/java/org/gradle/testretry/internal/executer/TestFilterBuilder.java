@@ -17,19 +17,52 @@ package org.gradle.testretry.internal.executer;
 
 import org.gradle.api.internal.tasks.testing.filter.DefaultTestFilter;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the tests to retry and builds the filter of a retry round.
+ * <p>
+ * Classes are filtered as a whole instead of by their tests where the {@link TestFilterCostModel} finds that cheaper.
+ */
 public final class TestFilterBuilder {
 
-    private final DefaultTestFilter filter = new DefaultTestFilter();
+    private final TestFilterCostModel costModel;
+    private final Map<String, Set<String>> tests = new LinkedHashMap<>();
+    private final Set<String> classes = new LinkedHashSet<>();
+
+    TestFilterBuilder(TestFilterCostModel costModel) {
+        this.costModel = costModel;
+    }
 
     public void test(String className, String methodName) {
-        filter.includeTest(className, methodName);
+        tests.computeIfAbsent(className, c -> new LinkedHashSet<>()).add(methodName);
     }
 
     public void clazz(String className) {
-        filter.includeTestsMatching(className); // don't use includeTest with null method - it doesn't work < Gradle 6
+        classes.add(className);
     }
 
     public DefaultTestFilter build() {
+        Map<String, Integer> testPatterns = new LinkedHashMap<>();
+        tests.forEach((className, methodNames) -> {
+            if (!classes.contains(className)) {
+                testPatterns.put(className, methodNames.size());
+            }
+        });
+        Set<String> wholeClasses = costModel.wholeClasses(testPatterns, classes);
+
+        DefaultTestFilter filter = new DefaultTestFilter();
+        classes.forEach(filter::includeTestsMatching); // don't use includeTest with null method - it doesn't work < Gradle 6
+        testPatterns.keySet().forEach(className -> {
+            if (wholeClasses.contains(className)) {
+                filter.includeTestsMatching(className);
+            } else {
+                tests.get(className).forEach(methodName -> filter.includeTest(className, methodName));
+            }
+        });
         return filter;
     }
 }
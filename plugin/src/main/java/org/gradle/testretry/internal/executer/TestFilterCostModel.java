@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which retried classes are cheaper to filter as a whole than by their failed tests.
+ * <p>
+ * Gradle matches every discovered test against every filter pattern, so each pattern of a round costs
+ * about as much as the number of tests discovered in that round. Filtering a class as a whole replaces
+ * its patterns with one, at the cost of running its tests that did not fail again.
+ * <p>
+ * Classes are measured as they complete in the first round, which runs all of their tests. Classes that
+ * have not been measured are always filtered by their failed tests.
+ * <p>
+ * Retry rounds don't apply the test task's own filter on top of their patterns, so a class filtered as a whole
+ * would also run the tests that the task filters out. Classes are therefore never filtered as a whole if the task
+ * filters tests by their names itself, and the first round is not measured then.
+ */
+public final class TestFilterCostModel {
+
+    // a rough cost of Gradle matching one discovered test against one filter pattern
+    static final long NANOS_PER_PATTERN_MATCH = 100;
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private final Map<String, ClassRun> fullestRuns = new ConcurrentHashMap<>();
+    private volatile boolean measuring = true;
+
+    /**
+     * Whether runs of whole classes are to be measured, as the model may decide to filter classes as a whole.
+     */
+    boolean isMeasuring() {
+        return measuring;
+    }
+
+    /**
+     * Records a run of all tests of a class.
+     */
+    void classCompleted(String className, int testCount, long durationMillis) {
+        if (testCount > 0) {
+            ClassRun run = new ClassRun(testCount, Math.max(0, durationMillis));
+            fullestRuns.merge(className, run, (previous, current) -> current.testCount >= previous.testCount ? current : previous);
+        }
+    }
+
+    /**
+     * Forgets all classes, to measure them again for the execution of a test task.
+     *
+     * @param taskFiltersTests whether the task filters tests by their names, which rules out filtering classes as a whole
+     */
+    void reset(boolean taskFiltersTests) {
+        fullestRuns.clear();
+        measuring = !taskFiltersTests;
+    }
+
+    /**
+     * The classes of the given test patterns that are to be filtered as a whole.
+     *
+     * @param testPatterns the number of test patterns per class
+     * @param wholeClasses the classes that are filtered as a whole anyway
+     */
+    Set<String> wholeClasses(Map<String, Integer> testPatterns, Collection<String> wholeClasses) {
+        if (!measuring) {
+            return Collections.emptySet();
+        }
+
+        long discoveredTests = 0;
+        for (Map.Entry<String, Integer> entry : testPatterns.entrySet()) {
+            ClassRun run = fullestRuns.get(entry.getKey());
+            discoveredTests += run == null ? entry.getValue() : Math.max(run.testCount, entry.getValue());
+        }
+        for (String className : wholeClasses) {
+            ClassRun run = fullestRuns.get(className);
+            discoveredTests += run == null ? 1 : run.testCount;
+        }
+
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : testPatterns.entrySet()) {
+            ClassRun run = fullestRuns.get(entry.getKey());
+            if (run != null && isCheaperAsWhole(run, entry.getValue(), discoveredTests)) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    private static boolean isCheaperAsWhole(ClassRun run, int patterns, long discoveredTests) {
+        // patterns of parameterized tests may match several tests, so this may underestimate the tests run again
+        long testsRunAgain = Math.max(0, run.testCount - patterns);
+        if (testsRunAgain == 0) {
+            return true;
+        }
+
+        long savedMatchingNanos = (patterns - 1) * discoveredTests * NANOS_PER_PATTERN_MATCH;
+        long runAgainNanos = testsRunAgain * run.durationMillis * NANOS_PER_MILLI / run.testCount;
+        return savedMatchingNanos > runAgainNanos;
+    }
+
+    private static final class ClassRun {
+
+        private final int testCount;
+        private final long durationMillis;
+
+        private ClassRun(int testCount, long durationMillis) {
+            this.testCount = testCount;
+            this.durationMillis = durationMillis;
+        }
+    }
+}
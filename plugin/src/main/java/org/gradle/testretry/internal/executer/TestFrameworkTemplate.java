@@ -18,8 +18,10 @@ package org.gradle.testretry.internal.executer;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.tasks.testing.Test;
 import org.gradle.internal.reflect.Instantiator;
+import org.gradle.testretry.internal.testsreader.ClassMetadataCache;
 import org.gradle.testretry.internal.testsreader.TestsReader;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Set;
 
@@ -29,15 +31,28 @@ public class TestFrameworkTemplate {
     public final Instantiator instantiator;
     public final ObjectFactory objectFactory;
     public final TestsReader testsReader;
+    public final TestFilterCostModel filterCostModel = new TestFilterCostModel();
 
-    public TestFrameworkTemplate(Test task, Instantiator instantiator, ObjectFactory objectFactory, Set<File> testClassesDir, Set<File> resolvedClasspath) {
+    public TestFrameworkTemplate(
+        Test task,
+        Instantiator instantiator,
+        ObjectFactory objectFactory,
+        Set<File> testClassesDir,
+        Set<File> resolvedClasspath,
+        @Nullable ClassMetadataCache classMetadataCache
+    ) {
         this.task = task;
         this.instantiator = instantiator;
         this.objectFactory = objectFactory;
-        this.testsReader = new TestsReader(testClassesDir, resolvedClasspath);
+        this.testsReader = new TestsReader(
+            testClassesDir,
+            resolvedClasspath,
+            new File(task.getTemporaryDir(), "test-retry-classpath.idx"),
+            classMetadataCache
+        );
     }
 
     public TestFilterBuilder filterBuilder() {
-        return new TestFilterBuilder();
+        return new TestFilterBuilder(filterCostModel);
     }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The outcomes of the tests of a test task in earlier builds, kept between builds to decide which failed tests are worth retrying.
+ * <p>
+ * For each test, the history keeps how often it ran, failed, was retried and passed when retried, how long it took,
+ * and the fingerprint of its last failure. Decisions are only based on earlier builds, while the outcomes of the
+ * current build are recorded separately and stored once it completes.
+ * <p>
+ * Counts are halved once they grow large, so that the history follows changes in the behavior of a test,
+ * and tests that have not run for a while are dropped. The history is a cache: any problem reading or writing it
+ * results in an empty history.
+ */
+final class TestHistory {
+
+    static final TestHistory NONE = new TestHistory(null, 0, Collections.emptyMap());
+
+    private static final Logger LOGGER = Logging.getLogger(TestHistory.class);
+
+    private static final int MAGIC = 0x54525448; // "TRTH"
+    private static final int VERSION = 1;
+
+    // the retries a test needs to pass are sized for this chance of it passing
+    private static final double TARGET_PASS_CHANCE = 0.95;
+    // the retries of a test in earlier builds before its history is trusted
+    private static final int MIN_RETRIES = 3;
+    private static final int MAX_COUNT = 64;
+    private static final int MAX_AGE_BUILDS = 100;
+    private static final int MAX_TESTS = 100_000;
+    private static final int MAX_NAME_LENGTH = 4096;
+
+    @Nullable
+    private final File file;
+    private final int build;
+    private final Map<String, Map<String, Entry>> previous;
+    private final Map<String, Map<String, Entry>> current = new HashMap<>();
+
+    private TestHistory(@Nullable File file, int build, Map<String, Map<String, Entry>> previous) {
+        this.file = file;
+        this.build = build;
+        this.previous = previous;
+    }
+
+    static TestHistory load(File file) {
+        if (!file.isFile()) {
+            return new TestHistory(file, 1, Collections.emptyMap());
+        }
+
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return new TestHistory(file, 1, Collections.emptyMap());
+            }
+            long checksum = in.readLong();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 16, bytes.length - 16);
+            if (crc.getValue() != checksum) {
+                return new TestHistory(file, 1, Collections.emptyMap());
+            }
+
+            int lastBuild = in.readInt();
+            int classCount = in.readInt();
+            Map<String, Map<String, Entry>> entries = new HashMap<>(classCount * 2);
+            for (int i = 0; i < classCount; i++) {
+                String className = in.readUTF();
+                int testCount = in.readInt();
+                Map<String, Entry> tests = new HashMap<>(testCount * 2);
+                for (int j = 0; j < testCount; j++) {
+                    tests.put(in.readUTF(), Entry.read(in));
+                }
+                entries.put(className, tests);
+            }
+            return new TestHistory(file, lastBuild + 1, entries);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to read test history " + file + ", ignoring it", e);
+            return new TestHistory(file, 1, Collections.emptyMap());
+        }
+    }
+
+    boolean isEnabled() {
+        return file != null;
+    }
+
+    synchronized void testCompleted(String className, String testName, boolean retry, boolean failed, long durationMillis, long failureFingerprint) {
+        if (file == null || className.length() > MAX_NAME_LENGTH || testName.length() > MAX_NAME_LENGTH) {
+            return;
+        }
+
+        Entry entry = current.computeIfAbsent(className, c -> new HashMap<>()).get(testName);
+        if (entry == null) {
+            Entry previousEntry = previous(className, testName);
+            entry = previousEntry == null ? new Entry() : previousEntry.copy();
+            current.get(className).put(testName, entry);
+        }
+
+        entry.meanMillis = entry.runs == 0 ? durationMillis : (3 * entry.meanMillis + durationMillis) / 4;
+        entry.runs++;
+        if (failed) {
+            entry.failures++;
+            entry.lastFailureFingerprint = failureFingerprint;
+        }
+        if (retry) {
+            entry.retries++;
+            if (!failed) {
+                entry.retryPasses++;
+            }
+        }
+        entry.lastBuild = build;
+        entry.age();
+    }
+
+    /**
+     * Whether a test that has been retried the given number of times in this build, and failed the given way, is worth retrying again.
+     * <p>
+     * A test that never passed when retried in earlier builds is not, unless it failed differently than it last did.
+     * A test that passed when retried is worth as many retries as it takes to pass with a high chance, given how often its retries passed.
+     */
+    boolean isWorthRetrying(String className, String testName, int retries, long failureFingerprint) {
+        Entry entry = previous(className, testName);
+        if (entry == null || entry.retries < MIN_RETRIES) {
+            return true;
+        } else if (entry.retryPasses == 0) {
+            return failureFingerprint != entry.lastFailureFingerprint;
+        } else {
+            return retries < entry.retriesToPass();
+        }
+    }
+
+    /**
+     * The chance of all given failed tests of a class passing when retried, based on how often their retries passed in earlier builds.
+     */
+    double passChance(String className, Set<String> testNames) {
+        if (file == null) {
+            return 1;
+        }
+        double chance = 1;
+        for (String testName : testNames) {
+            Entry entry = previous(className, testName);
+            chance *= entry == null ? Entry.retryPassChance(0, 0) : Entry.retryPassChance(entry.retryPasses, entry.retries);
+        }
+        return chance;
+    }
+
+    @Nullable
+    private Entry previous(String className, String testName) {
+        Map<String, Entry> tests = previous.get(className);
+        return tests == null ? null : tests.get(testName);
+    }
+
+    /**
+     * Stores the outcomes recorded in this build along with the history of the tests that didn't run.
+     */
+    synchronized void store() {
+        if (file == null || current.isEmpty()) {
+            return;
+        }
+
+        Map<String, Map<String, Entry>> entries = new HashMap<>();
+        previous.forEach((className, tests) -> tests.forEach((testName, entry) -> {
+            if (entry.lastBuild > build - MAX_AGE_BUILDS) {
+                entries.computeIfAbsent(className, c -> new HashMap<>()).put(testName, entry);
+            }
+        }));
+        current.forEach((className, tests) -> entries.computeIfAbsent(className, c -> new HashMap<>()).putAll(tests));
+        dropOldest(entries);
+
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bytes);
+            body.writeInt(build);
+            body.writeInt(entries.size());
+            for (Map.Entry<String, Map<String, Entry>> classEntries : entries.entrySet()) {
+                body.writeUTF(classEntries.getKey());
+                body.writeInt(classEntries.getValue().size());
+                for (Map.Entry<String, Entry> testEntry : classEntries.getValue().entrySet()) {
+                    body.writeUTF(testEntry.getKey());
+                    testEntry.getValue().write(body);
+                }
+            }
+            byte[] encoded = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(encoded);
+
+            Files.createDirectories(file.getParentFile().toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(crc.getValue());
+                out.write(encoded);
+            }
+            moveIntoPlace(tmpFile);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to write test history " + file, e);
+            tmpFile.delete();
+        }
+    }
+
+    private static void dropOldest(Map<String, Map<String, Entry>> entries) {
+        int size = entries.values().stream().mapToInt(Map::size).sum();
+        if (size <= MAX_TESTS) {
+            return;
+        }
+        List<Integer> lastBuilds = new ArrayList<>(size);
+        entries.values().forEach(tests -> tests.values().forEach(entry -> lastBuilds.add(entry.lastBuild)));
+        lastBuilds.sort(Comparator.reverseOrder());
+        int oldestKept = lastBuilds.get(MAX_TESTS - 1);
+        entries.values().forEach(tests -> tests.values().removeIf(entry -> entry.lastBuild < oldestKept));
+        entries.values().removeIf(Map::isEmpty);
+    }
+
+    private void moveIntoPlace(File tmpFile) throws IOException {
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static final class Entry {
+
+        private int runs;
+        private int failures;
+        private int retries;
+        private int retryPasses;
+        private long meanMillis;
+        private long lastFailureFingerprint;
+        private int lastBuild;
+
+        private static Entry read(DataInputStream in) throws IOException {
+            Entry entry = new Entry();
+            entry.runs = in.readInt();
+            entry.failures = in.readInt();
+            entry.retries = in.readInt();
+            entry.retryPasses = in.readInt();
+            entry.meanMillis = in.readLong();
+            entry.lastFailureFingerprint = in.readLong();
+            entry.lastBuild = in.readInt();
+            return entry;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(runs);
+            out.writeInt(failures);
+            out.writeInt(retries);
+            out.writeInt(retryPasses);
+            out.writeLong(meanMillis);
+            out.writeLong(lastFailureFingerprint);
+            out.writeInt(lastBuild);
+        }
+
+        private Entry copy() {
+            Entry copy = new Entry();
+            copy.runs = runs;
+            copy.failures = failures;
+            copy.retries = retries;
+            copy.retryPasses = retryPasses;
+            copy.meanMillis = meanMillis;
+            copy.lastFailureFingerprint = lastFailureFingerprint;
+            copy.lastBuild = lastBuild;
+            return copy;
+        }
+
+        private void age() {
+            if (runs >= MAX_COUNT) {
+                runs /= 2;
+                failures /= 2;
+            }
+            if (retries >= MAX_COUNT) {
+                retries /= 2;
+                retryPasses /= 2;
+            }
+        }
+
+        private int retriesToPass() {
+            double chance = retryPassChance(retryPasses, retries);
+            return Math.max(1, (int) Math.ceil(Math.log(1 - TARGET_PASS_CHANCE) / Math.log(1 - chance)));
+        }
+
+        // smoothed, so that a few retries don't result in a certainty either way
+        private static double retryPassChance(int retryPasses, int retries) {
+            return (retryPasses + 1.0) / (retries + 2.0);
+        }
+    }
+}
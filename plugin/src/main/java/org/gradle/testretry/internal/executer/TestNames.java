@@ -15,56 +15,234 @@
  */
 package org.gradle.testretry.internal.executer;
 
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+/**
+ * The names of tests, grouped by class.
+ * <p>
+ * Each class name is stored once, the number of tests is maintained as tests are added and removed,
+ * and the few tests that typically fail per class are kept in a small array rather than a hash set.
+ */
 public final class TestNames {
 
-    private final Map<String, Set<String>> map = new HashMap<>();
+    private final Map<String, ClassTests> map = new HashMap<>();
+    private int size;
 
     public void add(String className, String testName) {
-        map.computeIfAbsent(className, ignored -> new HashSet<>()).add(testName);
+        ClassTests tests = map.get(className);
+        if (tests == null) {
+            tests = new ClassTests();
+            map.put(className, tests);
+        }
+        if (tests.add(testName)) {
+            size++;
+        }
     }
 
     public void remove(String className, Predicate<? super String> predicate) {
-        Set<String> testNames = map.get(className);
-        if (testNames != null) {
-            testNames.removeIf(predicate);
-            if (testNames.isEmpty()) {
+        ClassTests tests = map.get(className);
+        if (tests != null) {
+            int before = tests.size();
+            tests.removeIf(predicate);
+            size -= before - tests.size();
+            if (tests.isEmpty()) {
                 map.remove(className);
             }
         }
     }
 
     public boolean remove(String className, String testName) {
-        Set<String> testNames = map.get(className);
-        if (testNames == null) {
+        ClassTests tests = map.get(className);
+        if (tests == null || !tests.remove(testName)) {
             return false;
-        } else {
-            if (testNames.remove(testName)) {
-                if (testNames.isEmpty()) {
-                    map.remove(className);
-                }
-                return true;
-            } else {
-                return false;
-            }
         }
+        size--;
+        if (tests.isEmpty()) {
+            map.remove(className);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all tests of the given class, returning them.
+     */
+    @Nullable
+    public Set<String> remove(String className) {
+        ClassTests tests = map.remove(className);
+        if (tests != null) {
+            size -= tests.size();
+        }
+        return tests;
+    }
+
+    public boolean contains(String className, String testName) {
+        ClassTests tests = map.get(className);
+        return tests != null && tests.contains(testName);
+    }
+
+    public void addAll(TestNames testNames) {
+        testNames.forEach((className, tests) -> tests.forEach(testName -> add(className, testName)));
+    }
+
+    /**
+     * A copy of these test names, without the given ones.
+     */
+    public TestNames without(TestNames testNames) {
+        TestNames result = new TestNames();
+        result.addAll(this);
+        testNames.forEach((className, tests) -> tests.forEach(testName -> result.remove(className, testName)));
+        return result;
+    }
+
+    /**
+     * The names of the classes that have tests, as a read-only view.
+     */
+    public Set<String> classNames() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    /**
+     * Visits the test names of each class, as read-only views, without creating a stream.
+     */
+    public void forEach(BiConsumer<String, Set<String>> action) {
+        map.forEach((className, tests) -> action.accept(className, tests.readOnly));
     }
 
+    /**
+     * The test names of each class, as read-only views.
+     */
     public Stream<Map.Entry<String, Set<String>>> stream() {
-        return map.entrySet().stream();
+        return map.entrySet().stream()
+            .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().readOnly));
     }
 
     public boolean isEmpty() {
-        return map.isEmpty();
+        return size == 0;
     }
 
     public int size() {
-        return stream().mapToInt(s -> s.getValue().size()).sum();
+        return size;
+    }
+
+    /**
+     * The test names of a class, in an array while there are few of them.
+     * <p>
+     * Only {@link TestNames} changes them, as it keeps count of all tests. Everyone else gets the read-only view.
+     */
+    static final class ClassTests extends AbstractSet<String> {
+
+        static final int MAX_ARRAY_SIZE = 8;
+
+        final Set<String> readOnly = Collections.unmodifiableSet(this);
+
+        private String[] array = new String[2];
+        private int arraySize;
+        private Set<String> set;
+
+        @Override
+        public boolean add(String testName) {
+            if (set != null) {
+                return set.add(testName);
+            }
+            if (indexOf(testName) >= 0) {
+                return false;
+            }
+            if (arraySize == MAX_ARRAY_SIZE) {
+                set = new HashSet<>(Arrays.asList(array).subList(0, arraySize));
+                array = null;
+                arraySize = 0;
+                return set.add(testName);
+            }
+            if (arraySize == array.length) {
+                array = Arrays.copyOf(array, Math.min(array.length * 2, MAX_ARRAY_SIZE));
+            }
+            array[arraySize++] = testName;
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object testName) {
+            if (set != null) {
+                return set.remove(testName);
+            }
+            int index = indexOf(testName);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object testName) {
+            return set != null ? set.contains(testName) : indexOf(testName) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return set != null ? set.size() : arraySize;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return set != null ? set.iterator() : new ArrayIterator();
+        }
+
+        private int indexOf(Object testName) {
+            for (int i = 0; i < arraySize; i++) {
+                if (array[i].equals(testName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void removeAt(int index) {
+            // order is irrelevant, move the last element into the gap
+            array[index] = array[--arraySize];
+            array[arraySize] = null;
+        }
+
+        private final class ArrayIterator implements Iterator<String> {
+
+            private int next;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return next < arraySize;
+            }
+
+            @Override
+            public String next() {
+                if (next >= arraySize) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return array[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                removeAt(--next);
+            }
+        }
     }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.internal.work.WorkerLeaseService;
+
+import javax.inject.Inject;
+
+/**
+ * The worker lease service of the build, injected by an {@link org.gradle.api.model.ObjectFactory} from the services of the project.
+ * <p>
+ * Unlike looking it up through {@code Task.getProject()}, this also works while the task executes from the configuration cache.
+ */
+public class WorkerLeases {
+
+    final WorkerLeaseService workerLeaseService;
+
+    @Inject
+    public WorkerLeases(WorkerLeaseService workerLeaseService) {
+        this.workerLeaseService = workerLeaseService;
+    }
+}
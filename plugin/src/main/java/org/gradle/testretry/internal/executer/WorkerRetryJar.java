@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer;
+
+import org.gradle.testretry.internal.config.TestRetryTaskExtensionAdapter;
+import org.gradle.testretry.internal.filter.FailureRules;
+import org.gradle.testretry.internal.filter.GlobMatcher;
+import org.gradle.testretry.internal.filter.GlobPattern;
+import org.gradle.testretry.internal.worker.WorkerRetryConfig;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Writes the jar that is added to the test runtime classpath when failed tests are retried in the test worker.
+ * <p>
+ * It contains the worker side classes, copied from the plugin's own classpath, and the retry settings of the task.
+ * The settings are read by {@link WorkerRetryConfig}, which is copied along with its nested classes and the matching it shares with the plugin.
+ * The worker side classes are never loaded by the plugin, as they depend on the test framework.
+ */
+final class WorkerRetryJar {
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private WorkerRetryJar() {
+    }
+
+    static File write(File jar, TestRetryTaskExtensionAdapter extension, Collection<String> workerClassNames) {
+        List<String> classNames = new ArrayList<>(workerClassNames);
+        addWithNestedClasses(WorkerRetryConfig.class, classNames);
+        addWithNestedClasses(GlobMatcher.class, classNames);
+        addWithNestedClasses(GlobPattern.class, classNames);
+        addWithNestedClasses(FailureRules.class, classNames);
+
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            for (String className : classNames) {
+                String classFileName = className.replace('.', '/') + CLASS_FILE_SUFFIX;
+                out.putNextEntry(new JarEntry(classFileName));
+                copyResource(classFileName, out);
+                out.closeEntry();
+            }
+
+            out.putNextEntry(new JarEntry(WorkerRetryConfig.RESOURCE_NAME));
+            WorkerRetryConfig.write(
+                out,
+                extension.getMaxRetries(),
+                extension.getMaxFailures(),
+                extension.getIncludeClasses(),
+                extension.getIncludeAnnotationClasses(),
+                extension.getExcludeClasses(),
+                extension.getExcludeAnnotationClasses(),
+                extension.getIncludeFailures(),
+                extension.getExcludeFailures()
+            );
+            out.closeEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return jar;
+    }
+
+    private static void addWithNestedClasses(Class<?> type, List<String> classNames) {
+        classNames.add(type.getName());
+        for (Class<?> nestedClass : type.getDeclaredClasses()) {
+            addWithNestedClasses(nestedClass, classNames);
+        }
+    }
+
+    private static void copyResource(String name, OutputStream out) throws IOException {
+        try (InputStream in = WorkerRetryJar.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new FileNotFoundException(name);
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+}
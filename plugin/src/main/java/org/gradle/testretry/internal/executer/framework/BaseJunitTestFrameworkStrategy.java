@@ -17,6 +17,7 @@ package org.gradle.testretry.internal.executer.framework;
 
 import org.gradle.testretry.internal.executer.TestFilterBuilder;
 import org.gradle.testretry.internal.executer.TestNames;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
 import org.gradle.testretry.internal.testsreader.TestsReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,22 +48,18 @@ abstract class BaseJunitTestFrameworkStrategy implements TestFrameworkStrategy {
     }
 
     protected void addFilters(TestFilterBuilder filters, TestsReader testsReader, TestNames failedTests, boolean canRunParameterizedSpockMethods) {
-        failedTests.stream()
-            .forEach(entry -> {
-                String className = entry.getKey();
-                Set<String> tests = entry.getValue();
-
-                if (tests.stream().anyMatch(ERROR_SYNTHETIC_TEST_NAMES::contains)) {
-                    filters.clazz(className);
-                    return;
-                }
+        failedTests.forEach((className, tests) -> {
+            if (tests.stream().anyMatch(ERROR_SYNTHETIC_TEST_NAMES::contains)) {
+                filters.clazz(className);
+                return;
+            }
 
-                if (processSpockTest(filters, testsReader, canRunParameterizedSpockMethods, className, tests)) {
-                    return;
-                }
+            if (processSpockTest(filters, testsReader, canRunParameterizedSpockMethods, className, tests)) {
+                return;
+            }
 
-                tests.forEach(name -> addPotentiallyParameterizedSuffixed(filters, className, name));
-            });
+            tests.forEach(name -> addPotentiallyParameterizedSuffixed(filters, className, name));
+        });
     }
 
     private boolean processSpockTest(TestFilterBuilder filters, TestsReader testsReader, boolean canRunParameterizedSpockMethods, String className, Set<String> tests) {
@@ -72,7 +69,8 @@ abstract class BaseJunitTestFrameworkStrategy implements TestFrameworkStrategy {
         }
 
         try {
-            Optional<Map<String, List<String>>> resultOpt = testsReader.readTestClassDirClass(className, () -> new SpockParameterClassVisitor(tests, testsReader));
+            Optional<Map<String, List<String>>> resultOpt = testsReader.readTestClassDirClassMetadata(className)
+                .map(classMetadata -> SpockParameterMatcher.match(testsReader, classMetadata, tests));
             if (resultOpt.isPresent()) {
                 Map<String, List<String>> result = resultOpt.get();
                 if (result.isEmpty()) {
@@ -116,7 +114,8 @@ abstract class BaseJunitTestFrameworkStrategy implements TestFrameworkStrategy {
 
     private static boolean isSpockStepwiseTest(TestsReader testsReader, String className) {
         try {
-            return testsReader.readTestClassDirClass(className, SpockStepwiseClassVisitor::new)
+            return testsReader.readTestClassDirClassMetadata(className)
+                .map(ClassMetadata::isSpockStepwise)
                 .orElse(false);
         } catch (Throwable t) {
             LOGGER.warn("Unable to determine if class " + className + " is a Spock @Stepwise test", t);
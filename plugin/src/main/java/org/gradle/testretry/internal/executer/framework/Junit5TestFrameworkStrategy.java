@@ -16,19 +16,38 @@
 package org.gradle.testretry.internal.executer.framework;
 
 import org.gradle.api.internal.tasks.testing.TestFramework;
+import org.gradle.api.internal.tasks.testing.filter.DefaultTestFilter;
 import org.gradle.api.internal.tasks.testing.junitplatform.JUnitPlatformTestFramework;
 import org.gradle.api.tasks.testing.junitplatform.JUnitPlatformOptions;
 import org.gradle.testretry.internal.executer.TestFilterBuilder;
 import org.gradle.testretry.internal.executer.TestFrameworkTemplate;
 import org.gradle.testretry.internal.executer.TestNames;
 
+/**
+ * Retries JUnit Platform tests in rounds, like the other frameworks.
+ * <p>
+ * Failed tests are not retried in place inside the worker. Jupiter has no way for an extension to run a test
+ * again with its full lifecycle, and an {@code InvocationInterceptor} can only call the test method once more
+ * on the same instance, skipping {@code @BeforeEach} and {@code @AfterEach} methods and extension callbacks.
+ * The attempts would also not be reported as separate results, as Gradle only learns about them from the engine.
+ * Use pipelined retries to start retrying before the round has completed.
+ */
 final class Junit5TestFrameworkStrategy extends BaseJunitTestFrameworkStrategy {
 
     @Override
     public TestFramework createRetrying(TestFrameworkTemplate template, TestNames failedTests) {
         TestFilterBuilder filters = template.filterBuilder();
         addFilters(filters, template.testsReader, failedTests, false);
-        JUnitPlatformTestFramework newFramework = new JUnitPlatformTestFramework(filters.build());
+        return create(template, filters.build());
+    }
+
+    @Override
+    public TestFramework createCopy(TestFrameworkTemplate template) {
+        return create(template, (DefaultTestFilter) template.task.getFilter());
+    }
+
+    private TestFramework create(TestFrameworkTemplate template, DefaultTestFilter filter) {
+        JUnitPlatformTestFramework newFramework = new JUnitPlatformTestFramework(filter);
         copyTestOptions((JUnitPlatformOptions) template.task.getTestFramework().getOptions(), newFramework.getOptions());
         return newFramework;
     }
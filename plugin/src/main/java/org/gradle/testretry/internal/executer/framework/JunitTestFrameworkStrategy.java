@@ -16,19 +16,38 @@
 package org.gradle.testretry.internal.executer.framework;
 
 import org.gradle.api.internal.tasks.testing.TestFramework;
+import org.gradle.api.internal.tasks.testing.filter.DefaultTestFilter;
 import org.gradle.api.internal.tasks.testing.junit.JUnitTestFramework;
 import org.gradle.api.tasks.testing.junit.JUnitOptions;
 import org.gradle.testretry.internal.executer.TestFilterBuilder;
 import org.gradle.testretry.internal.executer.TestFrameworkTemplate;
 import org.gradle.testretry.internal.executer.TestNames;
 
+/**
+ * Retries JUnit 4 tests in rounds, like the other frameworks.
+ * <p>
+ * Failed tests are not retried in place inside the worker. Gradle's JUnit 4 executor builds the runner of each
+ * test class itself, honoring only {@code @RunWith}, so there is no way to wrap it without changing the test classes
+ * or instrumenting the worker. Classes whose {@code @BeforeClass} methods or class rules failed are retried as a
+ * whole, as the failure is reported against a synthetic test rather than the methods of the class.
+ * Use pipelined retries to start retrying before the round has completed.
+ */
 final class JunitTestFrameworkStrategy extends BaseJunitTestFrameworkStrategy {
 
     @Override
     public TestFramework createRetrying(TestFrameworkTemplate template, TestNames failedTests) {
         TestFilterBuilder filters = template.filterBuilder();
         addFilters(filters, template.testsReader, failedTests, true);
-        JUnitTestFramework testFramework = new JUnitTestFramework(template.task, filters.build());
+        return create(template, filters.build());
+    }
+
+    @Override
+    public TestFramework createCopy(TestFrameworkTemplate template) {
+        return create(template, (DefaultTestFilter) template.task.getFilter());
+    }
+
+    private TestFramework create(TestFrameworkTemplate template, DefaultTestFilter filter) {
+        JUnitTestFramework testFramework = new JUnitTestFramework(template.task, filter);
         copyTestOptions((JUnitOptions) template.task.getTestFramework().getOptions(), testFramework.getOptions());
         return testFramework;
     }
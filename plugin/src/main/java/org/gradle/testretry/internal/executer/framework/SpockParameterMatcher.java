@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer.framework;
+
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Identifies the unparameterized Spock feature names of failed test names.
+ */
+final class SpockParameterMatcher {
+
+    // A valid Java identifier https://docs.oracle.com/javase/specs/jls/se8/html/jls-3.html#jls-3.8 including methods
+    private static final String SPOCK_PARAM_PATTERN = "#[\\p{L}\\d$_.()&&[^#\\s]]+";
+    private static final String WILDCARD = ".*";
+
+    private SpockParameterMatcher() {
+    }
+
+    /**
+     * Maps each failed test name to the feature names it may be an iteration of.
+     * Returns an empty map if the class is not a Spock specification.
+     */
+    static Map<String, List<String>> match(TestsReader testsReader, ClassMetadata classMetadata, Set<String> failedTestNames) {
+        Optional<List<String>> featureNames = featureNames(testsReader, classMetadata);
+        if (!featureNames.isPresent()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, List<String>> map = new HashMap<>();
+        featureNames.get().forEach(
+            methodPattern -> {
+                // Replace params in the method name with .*
+                String methodPatternRegex = Arrays.stream(methodPattern.split(SPOCK_PARAM_PATTERN))
+                    .map(Pattern::quote)
+                    .collect(Collectors.joining(WILDCARD))
+                    + WILDCARD; // For when no params in name - [iterationNum] implicitly added to end
+
+                failedTestNames.forEach(failedTestName -> {
+                    List<String> matches = map.computeIfAbsent(failedTestName, ignored -> new ArrayList<>());
+                    if (methodPattern.equals(failedTestName) || failedTestName.matches(methodPatternRegex)) {
+                        matches.add(methodPattern);
+                    }
+                });
+            });
+        return map;
+    }
+
+    /**
+     * The feature names declared by the class and its super classes, or empty if it does not extend {@code spock.lang.Specification}.
+     */
+    private static Optional<List<String>> featureNames(TestsReader testsReader, ClassMetadata classMetadata) {
+        Deque<ClassMetadata> hierarchy = new ArrayDeque<>();
+        ClassMetadata current = classMetadata;
+        while (true) {
+            hierarchy.push(current);
+            String superClassName = current.getSuperClassName();
+            if (superClassName == null || superClassName.equals("java.lang.Object")) {
+                return Optional.empty();
+            } else if (superClassName.equals("spock.lang.Specification")) {
+                break;
+            }
+
+            Optional<ClassMetadata> superClass = testsReader.readClassMetadata(superClassName);
+            if (!superClass.isPresent()) {
+                return Optional.empty();
+            }
+            current = superClass.get();
+        }
+
+        // super class features first
+        List<String> featureNames = new ArrayList<>();
+        hierarchy.forEach(c -> featureNames.addAll(c.getSpockFeatureNames()));
+        return Optional.of(featureNames);
+    }
+
+}
@@ -24,6 +24,10 @@ import org.gradle.testretry.internal.executer.TestNames;
 import org.gradle.testretry.internal.testsreader.TestsReader;
 import org.gradle.util.GradleVersion;
 
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+
 /**
  * Instances are scoped to a test task execution and are reused between rounds.
  */
@@ -49,4 +53,32 @@ public interface TestFrameworkStrategy {
 
     TestFramework createRetrying(TestFrameworkTemplate template, TestNames failedTests);
 
+    /**
+     * A copy of the task's test framework that runs the same tests, for an execution running alongside the task's own.
+     */
+    TestFramework createCopy(TestFrameworkTemplate template);
+
+    /**
+     * A copy of the task's test framework that retries failed tests in the test worker,
+     * or null if the framework does not support it.
+     */
+    @Nullable
+    default TestFramework createRetryingInWorker(TestFrameworkTemplate template) {
+        return null;
+    }
+
+    /**
+     * The worker side classes that need to be on the test runtime classpath to retry failed tests in the test worker.
+     */
+    default Collection<String> getWorkerClassNames() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Whether a failure of the given test has been retried in the test worker already, when retrying in the worker.
+     */
+    default boolean isRetriedInWorker(TestsReader testsReader, String className, String testName) {
+        return false;
+    }
+
 }
@@ -27,15 +27,22 @@ import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.testretry.internal.executer.TestFilterBuilder;
 import org.gradle.testretry.internal.executer.TestFrameworkTemplate;
 import org.gradle.testretry.internal.executer.TestNames;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
 import org.gradle.testretry.internal.testsreader.TestsReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.gradle.testretry.internal.executer.framework.TestFrameworkStrategy.gradleVersionIsAtLeast;
 
@@ -43,20 +50,21 @@ final class TestNgTestFrameworkStrategy implements TestFrameworkStrategy {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TestNgTestFrameworkStrategy.class);
 
-    private final Map<String, Optional<TestNgClassVisitor.ClassInfo>> classInfoCache = new HashMap<>();
+    private static final String WORKER_RETRY_LISTENER = "org.gradle.testretry.internal.worker.testng.TestNgRetryListener";
+    private static final String WORKER_RETRY_ANALYZER = "org.gradle.testretry.internal.worker.testng.TestNgRetryAnalyzer";
 
     @Override
     public boolean isLifecycleFailureTest(TestsReader testsReader, String className, String testName) {
-        return getClassInfo(testsReader, className)
-            .map(classInfo -> isLifecycleMethod(testsReader, testName, classInfo))
+        return getClassMetadata(testsReader, className)
+            .map(classMetadata -> isLifecycleMethod(testsReader, testName, classMetadata))
             .orElse(false);
     }
 
-    private boolean isLifecycleMethod(TestsReader testsReader, String testName, TestNgClassVisitor.ClassInfo classInfo) {
-        if (classInfo.getLifecycleMethods().contains(testName)) {
+    private boolean isLifecycleMethod(TestsReader testsReader, String testName, ClassMetadata classMetadata) {
+        if (classMetadata.getTestNgLifecycleMethods().contains(testName)) {
             return true;
         } else {
-            String superClass = classInfo.getSuperClass();
+            String superClass = classMetadata.getSuperClassName();
             if (superClass == null || superClass.equals("java.lang.Object")) {
                 return false;
             } else {
@@ -74,6 +82,35 @@ final class TestNgTestFrameworkStrategy implements TestFrameworkStrategy {
         return testFramework;
     }
 
+    @Override
+    public TestFramework createCopy(TestFrameworkTemplate template) {
+        TestNGTestFramework testFramework = createTestFramework(template, (DefaultTestFilter) template.task.getFilter());
+        copyTestNGOptions((TestNGOptions) template.task.getTestFramework().getOptions(), testFramework.getOptions());
+        return testFramework;
+    }
+
+    @Override
+    public TestFramework createRetryingInWorker(TestFrameworkTemplate template) {
+        TestNGTestFramework testFramework = createTestFramework(template, (DefaultTestFilter) template.task.getFilter());
+        TestNGOptions options = testFramework.getOptions();
+        copyTestNGOptions((TestNGOptions) template.task.getTestFramework().getOptions(), options);
+        Set<String> listeners = new LinkedHashSet<>(options.getListeners());
+        listeners.add(WORKER_RETRY_LISTENER);
+        options.setListeners(listeners);
+        return testFramework;
+    }
+
+    @Override
+    public Collection<String> getWorkerClassNames() {
+        return Arrays.asList(WORKER_RETRY_LISTENER, WORKER_RETRY_ANALYZER);
+    }
+
+    @Override
+    public boolean isRetriedInWorker(TestsReader testsReader, String className, String testName) {
+        // TestNG does not retry configuration methods
+        return !isLifecycleFailureTest(testsReader, className, testName);
+    }
+
     private TestNGTestFramework createTestFramework(TestFrameworkTemplate template, DefaultTestFilter retriedTestFilter) {
         if (gradleVersionIsAtLeast("6.6")) {
             return new TestNGTestFramework(template.task, template.task.getClasspath(), retriedTestFilter, template.objectFactory);
@@ -110,18 +147,17 @@ final class TestNgTestFrameworkStrategy implements TestFrameworkStrategy {
     }
 
     private void addFilters(TestsReader testsReader, TestNames failedTests, TestFilterBuilder filters) {
-        failedTests.stream().forEach(entry -> {
-            String className = entry.getKey();
-            entry.getValue().forEach(test -> {
-                Optional<TestNgClassVisitor.ClassInfo> classInfoOpt = getClassInfo(testsReader, className);
-                if (classInfoOpt.isPresent()) {
-                    TestNgClassVisitor.ClassInfo classInfo = classInfoOpt.get();
-                    if (isLifecycleMethod(testsReader, test, classInfo)) {
+        failedTests.forEach((className, tests) -> {
+            tests.forEach(test -> {
+                Optional<ClassMetadata> classMetadataOpt = getClassMetadata(testsReader, className);
+                if (classMetadataOpt.isPresent()) {
+                    ClassMetadata classMetadata = classMetadataOpt.get();
+                    if (isLifecycleMethod(testsReader, test, classMetadata)) {
                         filters.clazz(className);
                     } else {
                         String parameterlessName = stripParameters(test);
                         filters.test(className, parameterlessName);
-                        classInfo.dependsOn(parameterlessName)
+                        dependencyChain(classMetadata, parameterlessName)
                             .forEach(methodName -> filters.test(className, methodName));
                     }
                 } else {
@@ -131,17 +167,40 @@ final class TestNgTestFrameworkStrategy implements TestFrameworkStrategy {
         });
     }
 
-    private Optional<TestNgClassVisitor.ClassInfo> getClassInfo(TestsReader testsReader, String className) {
-        return classInfoCache.computeIfAbsent(className, ignored -> {
-            Optional<TestNgClassVisitor.ClassInfo> classInfoOpt;
-            try {
-                classInfoOpt = testsReader.readTestClassDirClass(className, TestNgClassVisitor::new);
-            } catch (Throwable t) {
-                LOGGER.warn("Unable to determine if class " + className + " has TestNG dependent tests", t);
-                classInfoOpt = Optional.empty();
-            }
-            return classInfoOpt;
-        });
+    private Optional<ClassMetadata> getClassMetadata(TestsReader testsReader, String className) {
+        try {
+            return testsReader.readTestClassDirClassMetadata(className);
+        } catch (Throwable t) {
+            LOGGER.warn("Unable to determine if class " + className + " has TestNG dependent tests", t);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * All methods the given method transitively depends on, and all methods that transitively depend on it.
+     */
+    static Set<String> dependencyChain(ClassMetadata classMetadata, String method) {
+        Set<String> dependentChain = new HashSet<>();
+
+        List<String> search = Collections.singletonList(method);
+        while (!search.isEmpty()) {
+            search = search.stream()
+                .flatMap(upstream -> classMetadata.getTestNgDependsOn(upstream).stream())
+                .filter(upstream -> !dependentChain.contains(upstream))
+                .collect(Collectors.toList());
+            dependentChain.addAll(search);
+        }
+
+        search = Collections.singletonList(method);
+        while (!search.isEmpty()) {
+            search = search.stream()
+                .flatMap(downstream -> classMetadata.getTestNgDependedOn(downstream).stream())
+                .filter(downstream -> !dependentChain.contains(downstream))
+                .collect(Collectors.toList());
+            dependentChain.addAll(search);
+        }
+
+        return dependentChain;
     }
 
     private static String stripParameters(String testMethodName) {
@@ -17,8 +17,8 @@ package org.gradle.testretry.internal.filter;
 
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
 import org.gradle.testretry.internal.testsreader.TestsReader;
-import org.objectweb.asm.AnnotationVisitor;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,10 +40,11 @@ public class AnnotationInspectorImpl implements AnnotationInspector {
     }
 
     @Override
-    public Set<String> getClassAnnotations(String className) {
+    public synchronized Set<String> getClassAnnotations(String className) {
         Set<String> annotations = cache.get(className);
         if (annotations == null) {
-            annotations = testsReader.readClass(className, ClassAnnotationVisitor::new)
+            annotations = testsReader.readClassMetadata(className)
+                .map(this::collectAnnotations)
                 .orElseGet(() -> {
                     LOGGER.warn("Unable to find annotations of " + className);
                     return Collections.emptySet();
@@ -53,9 +54,23 @@ public class AnnotationInspectorImpl implements AnnotationInspector {
         return annotations;
     }
 
+    private Set<String> collectAnnotations(ClassMetadata classMetadata) {
+        Set<String> found = new HashSet<>();
+        String superClassName = classMetadata.getSuperClassName();
+        if (superClassName != null && !superClassName.equals("java.lang.Object")) {
+            getClassAnnotations(superClassName)
+                .stream()
+                .filter(this::isInherited)
+                .forEach(found::add);
+        }
+        found.addAll(classMetadata.getAnnotations());
+        return found.isEmpty() ? Collections.emptySet() : found;
+    }
+
     private boolean isInherited(String annotationClassName) {
         return inheritedCache.computeIfAbsent(annotationClassName, ignored ->
-            testsReader.readClass(annotationClassName, AnnotationAnnotationVisitor::new)
+            testsReader.readClassMetadata(annotationClassName)
+                .map(ClassMetadata::isInheritedAnnotation)
                 .orElseGet(() -> {
                     LOGGER.warn("Cannot determine whether @" + annotationClassName + " is inherited");
                     return false;
@@ -63,52 +78,4 @@ public class AnnotationInspectorImpl implements AnnotationInspector {
         );
     }
 
-    final class ClassAnnotationVisitor extends TestsReader.Visitor<Set<String>> {
-
-        private final Set<String> found = new HashSet<>();
-
-        @Override
-        public Set<String> getResult() {
-            return found.isEmpty() ? Collections.emptySet() : found;
-        }
-
-        @Override
-        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-            if (!superName.equals("java/lang/Object")) {
-                getClassAnnotations(superName.replace('/', '.'))
-                    .stream()
-                    .filter(AnnotationInspectorImpl.this::isInherited)
-                    .forEach(found::add);
-            }
-        }
-
-        @Override
-        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-            found.add(classDescriptorToClassName(descriptor));
-            return null;
-        }
-
-    }
-
-    static final class AnnotationAnnotationVisitor extends TestsReader.Visitor<Boolean> {
-
-        private boolean inherited;
-
-        @Override
-        public Boolean getResult() {
-            return inherited;
-        }
-
-        @Override
-        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-            if (descriptor.equals("Ljava/lang/annotation/Inherited;")) {
-                inherited = true;
-            }
-            return null;
-        }
-    }
-
-    private static String classDescriptorToClassName(String descriptor) {
-        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
-    }
 }
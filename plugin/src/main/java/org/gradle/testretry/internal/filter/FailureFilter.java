@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.filter;
+
+import org.gradle.internal.serialize.PlaceholderException;
+import org.gradle.testretry.internal.testsreader.ClassMetadata;
+import org.gradle.testretry.internal.testsreader.TestsReader;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a test may be retried based on how it failed, following the {@link FailureRules}.
+ * <p>
+ * The super classes of an exception are looked up by name, as Gradle reports exceptions that the build can't load as
+ * placeholders: JDK classes are loaded, all other classes are read from the test runtime classpath.
+ */
+public final class FailureFilter {
+
+    public static final FailureFilter NONE = new FailureFilter(null, Collections.emptySet(), Collections.emptySet());
+
+    @Nullable
+    private final TestsReader testsReader;
+    private final FailureRules rules;
+
+    private final Map<String, Set<String>> typeHierarchies = new ConcurrentHashMap<>();
+
+    public FailureFilter(@Nullable TestsReader testsReader, Collection<String> includeFailures, Collection<String> excludeFailures) {
+        this.testsReader = testsReader;
+        this.rules = new FailureRules(includeFailures, excludeFailures, new PlaceholderTypeHierarchy());
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public boolean canRetry(Throwable failure) {
+        return rules.canRetry(failure);
+    }
+
+    private Set<String> typeHierarchy(String className) {
+        Set<String> hierarchy = typeHierarchies.get(className);
+        if (hierarchy == null) {
+            hierarchy = new LinkedHashSet<>();
+            for (String type = className; type != null && !hierarchy.contains(type); type = superClassName(type)) {
+                hierarchy.add(type);
+            }
+            typeHierarchies.put(className, hierarchy);
+        }
+        return hierarchy;
+    }
+
+    @Nullable
+    private String superClassName(String className) {
+        if (className.equals("java.lang.Throwable")) {
+            return null;
+        }
+        try {
+            // only JDK classes, which all types of failures end in
+            Class<?> superClass = Class.forName(className, false, null).getSuperclass();
+            return superClass == null ? null : superClass.getName();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return testsReader == null ? null : readSuperClassName(testsReader, className);
+        }
+    }
+
+    @Nullable
+    private static String readSuperClassName(TestsReader testsReader, String className) {
+        try {
+            return testsReader.readClassMetadata(className).map(ClassMetadata::getSuperClassName).orElse(null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private final class PlaceholderTypeHierarchy implements FailureRules.TypeHierarchy {
+
+        @Override
+        public String className(Throwable exception) {
+            return exception instanceof PlaceholderException ? ((PlaceholderException) exception).getExceptionClassName() : exception.getClass().getName();
+        }
+
+        @Override
+        public Set<String> of(Throwable exception) {
+            return typeHierarchy(className(exception));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The rules that decide whether a test may be retried based on how it failed.
+ * <p>
+ * A rule is a pattern for the qualified class name of an exception or any of its super classes, optionally followed by a colon
+ * and a pattern for its message. A failure matches a rule if the exception or any of its causes does.
+ * <p>
+ * Rules are compiled once. The class name patterns of all rules without a message are matched at once, and their verdict
+ * is cached per exception type, so that only rules with a message are evaluated for every failure.
+ * <p>
+ * Test workers that retry failed tests themselves apply the same rules, so this class must only depend on the JDK.
+ * How the super classes of an exception are found is up to the {@link TypeHierarchy} of each side.
+ */
+public final class FailureRules {
+
+    private static final char MESSAGE_SEPARATOR = ':';
+    private static final int MAX_CAUSES = 8;
+
+    private final TypeHierarchy typeHierarchy;
+    private final Rules includes;
+    private final Rules excludes;
+
+    public FailureRules(Collection<String> includeFailures, Collection<String> excludeFailures, TypeHierarchy typeHierarchy) {
+        this.typeHierarchy = typeHierarchy;
+        this.includes = new Rules(includeFailures);
+        this.excludes = new Rules(excludeFailures);
+    }
+
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public boolean canRetry(Throwable failure) {
+        if (isEmpty()) {
+            return true;
+        }
+        if (!includes.isEmpty() && !includes.matches(failure)) {
+            return false;
+        }
+        return !excludes.matches(failure);
+    }
+
+    /**
+     * Finds the types of exceptions that rules are matched against.
+     */
+    public interface TypeHierarchy {
+
+        /**
+         * The qualified class name of the exception, by which the verdict of the rules without a message is cached.
+         */
+        String className(Throwable exception);
+
+        /**
+         * The qualified class names of the exception and its super classes, as far as they are known.
+         */
+        Set<String> of(Throwable exception);
+
+    }
+
+    private final class Rules {
+
+        private final GlobMatcher types;
+        private final List<MessageRule> messageRules = new ArrayList<>();
+        private final Map<String, Boolean> typeVerdicts = new ConcurrentHashMap<>();
+
+        private Rules(Collection<String> rules) {
+            List<String> types = new ArrayList<>();
+            for (String rule : rules) {
+                int separator = rule.indexOf(MESSAGE_SEPARATOR);
+                if (separator < 0) {
+                    types.add(rule.trim());
+                } else {
+                    messageRules.add(new MessageRule(
+                        GlobPattern.from(rule.substring(0, separator).trim()),
+                        GlobPattern.from(rule.substring(separator + 1).trim())
+                    ));
+                }
+            }
+            this.types = GlobMatcher.compile(types);
+        }
+
+        private boolean isEmpty() {
+            return types.isEmpty() && messageRules.isEmpty();
+        }
+
+        private boolean matches(Throwable failure) {
+            Throwable exception = failure;
+            for (int i = 0; exception != null && i <= MAX_CAUSES; i++) {
+                if (matchesException(exception)) {
+                    return true;
+                }
+                exception = exception.getCause() == exception ? null : exception.getCause();
+            }
+            return false;
+        }
+
+        private boolean matchesException(Throwable exception) {
+            if (!types.isEmpty()) {
+                String className = typeHierarchy.className(exception);
+                Boolean verdict = typeVerdicts.get(className);
+                if (verdict == null) {
+                    verdict = types.matchesAny(typeHierarchy.of(exception));
+                    typeVerdicts.put(className, verdict);
+                }
+                if (verdict) {
+                    return true;
+                }
+            }
+
+            if (!messageRules.isEmpty()) {
+                String message = exception.getMessage();
+                if (message != null) {
+                    for (MessageRule rule : messageRules) {
+                        if (rule.message.matches(message) && matchesAny(rule.type, typeHierarchy.of(exception))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean matchesAny(GlobPattern pattern, Set<String> classNames) {
+        for (String className : classNames) {
+            if (pattern.matches(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class MessageRule {
+
+        private final GlobPattern type;
+        private final GlobPattern message;
+
+        private MessageRule(GlobPattern type, GlobPattern message) {
+            this.type = type;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.filter;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Matches strings against a set of glob patterns at once, where {@code *} matches zero or more of any character.
+ * <p>
+ * All patterns are combined into one automaton whose states are the sets of pattern positions
+ * that can be reached after reading a prefix of the input. States are created lazily as inputs
+ * are matched, so that matching is done in a single pass over the input, regardless of the
+ * number of patterns, and does not allocate once the states it needs exist.
+ * <p>
+ * Test workers that retry failed tests themselves match with this class too, so it must only depend on the JDK.
+ */
+public final class GlobMatcher {
+
+    private static final char WILDCARD = '*';
+    private static final int ASCII = 128;
+
+    // all patterns, consecutive wildcards collapsed, each followed by an accepting position
+    private final char[] positions;
+    private final boolean[] accepting;
+    private final boolean[] acceptsAnySuffix;
+
+    private final Map<BitSet, State> states = new HashMap<>();
+    private final State initial;
+
+    private GlobMatcher(Collection<String> patterns) {
+        StringBuilder positions = new StringBuilder();
+        BitSet accepting = new BitSet();
+        BitSet acceptsAnySuffix = new BitSet();
+        BitSet starts = new BitSet();
+        for (String pattern : patterns) {
+            starts.set(positions.length());
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c != WILDCARD || i == 0 || pattern.charAt(i - 1) != WILDCARD) {
+                    positions.append(c);
+                }
+            }
+            if (positions.length() > 0 && positions.charAt(positions.length() - 1) == WILDCARD) {
+                acceptsAnySuffix.set(positions.length() - 1);
+            }
+            accepting.set(positions.length());
+            positions.append('\0');
+        }
+
+        this.positions = positions.toString().toCharArray();
+        this.accepting = toArray(accepting, this.positions.length);
+        this.acceptsAnySuffix = toArray(acceptsAnySuffix, this.positions.length);
+        this.initial = state(closure(starts));
+    }
+
+    public static GlobMatcher compile(Collection<String> patterns) {
+        return new GlobMatcher(new LinkedHashSet<>(patterns));
+    }
+
+    public boolean isEmpty() {
+        return positions.length == 0;
+    }
+
+    public synchronized boolean matches(String string) {
+        State state = initial;
+        for (int i = 0; i < string.length(); i++) {
+            if (state.acceptsAnySuffix) {
+                return true;
+            } else if (state.dead) {
+                return false;
+            }
+            state = state.next(string.charAt(i));
+        }
+        return state.accepting;
+    }
+
+    public boolean matchesAny(Collection<String> strings) {
+        for (String string : strings) {
+            if (matches(string)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BitSet closure(BitSet positions) {
+        // a wildcard may also match nothing
+        for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+            if (this.positions[p] == WILDCARD && !accepting[p]) {
+                positions.set(p + 1);
+            }
+        }
+        return positions;
+    }
+
+    private State state(BitSet positions) {
+        State state = states.get(positions);
+        if (state == null) {
+            state = new State(positions);
+            states.put(positions, state);
+        }
+        return state;
+    }
+
+    private State transition(State from, char c) {
+        BitSet next = new BitSet(positions.length);
+        for (int p = from.positions.nextSetBit(0); p >= 0; p = from.positions.nextSetBit(p + 1)) {
+            if (accepting[p]) {
+                continue;
+            }
+            if (positions[p] == WILDCARD) {
+                next.set(p);
+            } else if (positions[p] == c) {
+                next.set(p + 1);
+            }
+        }
+        return state(closure(next));
+    }
+
+    private static boolean[] toArray(BitSet bits, int length) {
+        boolean[] array = new boolean[length];
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            array[i] = true;
+        }
+        return array;
+    }
+
+    private final class State {
+
+        private final BitSet positions;
+        private final boolean accepting;
+        private final boolean acceptsAnySuffix;
+        private final boolean dead;
+
+        private final State[] asciiTransitions = new State[ASCII];
+        private Map<Character, State> otherTransitions;
+
+        private State(BitSet positions) {
+            this.positions = positions;
+            this.dead = positions.isEmpty();
+            boolean accepting = false;
+            boolean acceptsAnySuffix = false;
+            for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+                accepting |= GlobMatcher.this.accepting[p];
+                acceptsAnySuffix |= GlobMatcher.this.acceptsAnySuffix[p];
+            }
+            this.accepting = accepting;
+            this.acceptsAnySuffix = acceptsAnySuffix;
+        }
+
+        private State next(char c) {
+            if (c < ASCII) {
+                State next = asciiTransitions[c];
+                if (next == null) {
+                    next = transition(this, c);
+                    asciiTransitions[c] = next;
+                }
+                return next;
+            } else {
+                if (otherTransitions == null) {
+                    otherTransitions = new HashMap<>();
+                }
+                return otherTransitions.computeIfAbsent(c, k -> transition(this, k));
+            }
+        }
+    }
+}
@@ -15,38 +15,32 @@
  */
 package org.gradle.testretry.internal.filter;
 
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Collections;
 
-final class GlobPattern {
-
-    public static final Pattern STAR_CHAR_PATTERN = Pattern.compile("\\*");
-    public static final String MATCH_ANY = ".*?";
+/**
+ * A single glob pattern, where {@code *} matches zero or more of any character.
+ *
+ * <p>
+ * It is copied into the worker jar along with {@link GlobMatcher}, for the failure rules.
+ *
+ * @see GlobMatcher for matching against many patterns at once
+ */
+public final class GlobPattern {
 
     private final String string;
-    private final Pattern pattern;
+    private final GlobMatcher matcher;
 
-    private GlobPattern(String string, Pattern pattern) {
+    private GlobPattern(String string) {
         this.string = string;
-        this.pattern = pattern;
+        this.matcher = GlobMatcher.compile(Collections.singleton(string));
     }
 
     static GlobPattern from(String string) {
-        String patternString = STAR_CHAR_PATTERN.splitAsStream(string)
-            .map(Pattern::quote)
-            .collect(Collectors.joining(MATCH_ANY));
-
-        if (string.endsWith("*")) {
-            patternString = patternString + MATCH_ANY;
-        }
-
-        Pattern pattern = Pattern.compile(patternString);
-
-        return new GlobPattern(patternString, pattern);
+        return new GlobPattern(string);
     }
 
     boolean matches(String test) {
-        return pattern.matcher(test).matches();
+        return matcher.matches(test);
     }
 
     @Override
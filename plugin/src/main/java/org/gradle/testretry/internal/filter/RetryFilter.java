@@ -16,18 +16,27 @@
 package org.gradle.testretry.internal.filter;
 
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RetryFilter {
 
     private final AnnotationInspector annotationInspector;
 
-    private final Set<GlobPattern> includeClasses;
-    private final Set<GlobPattern> includeAnnotationClasses;
-    private final Set<GlobPattern> excludeClasses;
-    private final Set<GlobPattern> excludeAnnotationClasses;
+    private final GlobMatcher includeClasses;
+    private final GlobMatcher includeAnnotationClasses;
+    private final GlobMatcher excludeClasses;
+    private final GlobMatcher excludeAnnotationClasses;
+    private final FailureFilter failureFilter;
+
+    // the verdict only depends on the class name, and the same class usually fails many times
+    private final Map<String, Boolean> verdicts = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong annotationInspectionNanos = new AtomicLong();
 
     public RetryFilter(
         AnnotationInspector annotationInspector,
@@ -35,50 +44,94 @@ public class RetryFilter {
         Collection<String> includeAnnotationClasses,
         Collection<String> excludeClasses,
         Collection<String> excludeAnnotationClasses
+    ) {
+        this(annotationInspector, includeClasses, includeAnnotationClasses, excludeClasses, excludeAnnotationClasses, FailureFilter.NONE);
+    }
+
+    public RetryFilter(
+        AnnotationInspector annotationInspector,
+        Collection<String> includeClasses,
+        Collection<String> includeAnnotationClasses,
+        Collection<String> excludeClasses,
+        Collection<String> excludeAnnotationClasses,
+        FailureFilter failureFilter
     ) {
         this.annotationInspector = annotationInspector;
-        this.includeClasses = toPatterns(includeClasses);
-        this.includeAnnotationClasses = toPatterns(includeAnnotationClasses);
-        this.excludeClasses = toPatterns(excludeClasses);
-        this.excludeAnnotationClasses = toPatterns(excludeAnnotationClasses);
+        this.includeClasses = GlobMatcher.compile(includeClasses);
+        this.includeAnnotationClasses = GlobMatcher.compile(includeAnnotationClasses);
+        this.excludeClasses = GlobMatcher.compile(excludeClasses);
+        this.excludeAnnotationClasses = GlobMatcher.compile(excludeAnnotationClasses);
+        this.failureFilter = failureFilter;
     }
 
     public boolean canRetry(String className) {
+        Boolean verdict = verdicts.get(className);
+        if (verdict == null) {
+            cacheMisses.incrementAndGet();
+            verdict = evaluate(className);
+            verdicts.put(className, verdict);
+        } else {
+            cacheHits.incrementAndGet();
+        }
+        return verdict;
+    }
+
+    /**
+     * Whether a test that failed this way may be retried, regardless of its class.
+     */
+    public boolean canRetry(Throwable failure) {
+        return failureFilter.canRetry(failure);
+    }
+
+    public boolean filtersFailures() {
+        return !failureFilter.isEmpty();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public long getAnnotationInspectionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(annotationInspectionNanos.get());
+    }
+
+    private boolean evaluate(String className) {
         if (!includeClasses.isEmpty()) {
-            if (!anyMatch(includeClasses, className)) {
+            if (!includeClasses.matches(className)) {
                 return false;
             }
         }
 
-        if (anyMatch(excludeClasses, className)) {
+        if (excludeClasses.matches(className)) {
             return false;
         }
 
         Set<String> annotations = null; // fetching annotations is expensive, don't do it unnecessarily.
         if (!includeAnnotationClasses.isEmpty()) {
-            annotations = annotationInspector.getClassAnnotations(className);
-            if (annotations.isEmpty() || !anyMatch(includeAnnotationClasses, annotations)) {
+            annotations = getClassAnnotations(className);
+            if (annotations.isEmpty() || !includeAnnotationClasses.matchesAny(annotations)) {
                 return false;
             }
         }
 
         if (!excludeAnnotationClasses.isEmpty()) {
-            annotations = annotations == null ? annotationInspector.getClassAnnotations(className) : annotations;
-            return !anyMatch(excludeAnnotationClasses, annotations);
+            annotations = annotations == null ? getClassAnnotations(className) : annotations;
+            return !excludeAnnotationClasses.matchesAny(annotations);
         }
 
         return true;
     }
 
-    private static boolean anyMatch(Set<GlobPattern> patterns, String string) {
-        return anyMatch(patterns, Collections.singleton(string));
-    }
-
-    private static boolean anyMatch(Set<GlobPattern> patterns, Set<String> strings) {
-        return patterns.stream().anyMatch(p -> strings.stream().anyMatch(p::matches));
-    }
-
-    private static Set<GlobPattern> toPatterns(Collection<String> strings) {
-        return strings.stream().map(GlobPattern::from).collect(Collectors.toSet());
+    private Set<String> getClassAnnotations(String className) {
+        long start = System.nanoTime();
+        try {
+            return annotationInspector.getClassAnnotations(className);
+        } finally {
+            annotationInspectionNanos.addAndGet(System.nanoTime() - start);
+        }
     }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader;
+
+/**
+ * Identifies the contents of a class file by its location, size and modification time.
+ * <p>
+ * For classes in jars, the location includes the entry name and the size and modification time are those of the jar.
+ */
+public final class ClassFileKey {
+
+    private final String location;
+    private final long length;
+    private final long lastModified;
+
+    public ClassFileKey(String location, long length, long lastModified) {
+        this.location = location;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ClassFileKey that = (ClassFileKey) o;
+
+        return length == that.length && lastModified == that.lastModified && location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = location.hashCode();
+        result = 31 * result + Long.hashCode(length);
+        result = 31 * result + Long.hashCode(lastModified);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return location;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything the plugin needs to know about a single class file, extracted in one pass.
+ * <p>
+ * Instances only describe the class itself. Walking the class hierarchy is up to the consumer.
+ */
+public final class ClassMetadata {
+
+    final String className;
+    @Nullable
+    String superClassName;
+    final Set<String> annotations = new LinkedHashSet<>();
+    boolean inheritedAnnotation;
+    boolean spockStepwise;
+    final List<String> spockFeatureNames = new ArrayList<>();
+    final Set<String> testNgLifecycleMethods = new HashSet<>();
+    final Map<String, List<String>> testNgDependsOn = new HashMap<>();
+    final Map<String, List<String>> testNgDependedOn = new HashMap<>();
+
+    ClassMetadata(String className) {
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * The qualified name of the super class, or null for {@code java.lang.Object} and module descriptors.
+     */
+    @Nullable
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    /**
+     * The qualified class names of the annotations declared on the class itself.
+     */
+    public Set<String> getAnnotations() {
+        return Collections.unmodifiableSet(annotations);
+    }
+
+    /**
+     * Whether this class is an annotation type that is itself annotated with {@code @Inherited}.
+     */
+    public boolean isInheritedAnnotation() {
+        return inheritedAnnotation;
+    }
+
+    public boolean isSpockStepwise() {
+        return spockStepwise;
+    }
+
+    /**
+     * The names of the Spock features declared by this class, as found in their {@code FeatureMetadata}.
+     */
+    public List<String> getSpockFeatureNames() {
+        return Collections.unmodifiableList(spockFeatureNames);
+    }
+
+    public Set<String> getTestNgLifecycleMethods() {
+        return Collections.unmodifiableSet(testNgLifecycleMethods);
+    }
+
+    /**
+     * The methods the given method depends on via TestNG's {@code dependsOnMethods}.
+     */
+    public List<String> getTestNgDependsOn(String method) {
+        return testNgDependsOn.getOrDefault(method, Collections.emptyList());
+    }
+
+    /**
+     * The methods that depend on the given method via TestNG's {@code dependsOnMethods}.
+     */
+    public List<String> getTestNgDependedOn(String method) {
+        return testNgDependedOn.getOrDefault(method, Collections.emptyList());
+    }
+
+    /**
+     * A rough estimate of the heap retained by this instance, used to bound shared caches.
+     */
+    long getEstimatedSizeBytes() {
+        long size = 128 + estimatedStringSize(className) + estimatedStringSize(superClassName);
+        size += estimatedSize(annotations) + estimatedSize(spockFeatureNames) + estimatedSize(testNgLifecycleMethods);
+        for (Map.Entry<String, List<String>> entry : testNgDependsOn.entrySet()) {
+            size += 2 * (48 + estimatedStringSize(entry.getKey()) + estimatedSize(entry.getValue()));
+        }
+        return size;
+    }
+
+    private static long estimatedSize(Collection<String> strings) {
+        long size = 16;
+        for (String string : strings) {
+            size += 32 + estimatedStringSize(string);
+        }
+        return size;
+    }
+
+    static long estimatedStringSize(@Nullable String string) {
+        return string == null ? 0 : 40 + 2L * string.length();
+    }
+
+}
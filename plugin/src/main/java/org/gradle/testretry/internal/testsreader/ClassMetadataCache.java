@@ -13,25 +13,17 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.gradle.testretry.internal.executer.framework;
+package org.gradle.testretry.internal.testsreader;
 
-import org.gradle.testretry.internal.testsreader.TestsReader;
-import org.objectweb.asm.AnnotationVisitor;
+import java.util.function.Supplier;
 
-final class SpockStepwiseClassVisitor extends TestsReader.Visitor<Boolean> {
-
-    private boolean stepwise = false;
+/**
+ * A cache of class metadata that may be shared between test tasks and builds.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface ClassMetadataCache {
 
-    @Override
-    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-        if (descriptor.contains("spock/lang/Stepwise")) {
-            this.stepwise = true;
-        }
-        return null;
-    }
+    ClassMetadata get(ClassFileKey key, Supplier<ClassMetadata> loader);
 
-    @Override
-    public Boolean getResult() {
-        return stepwise;
-    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.ASM7;
+
+/**
+ * Collects the {@link ClassMetadata} of a class, covering what all test framework strategies and the retry filter need.
+ */
+final class ClassMetadataVisitor extends TestsReader.Visitor<ClassMetadata> {
+
+    private static final List<String> TESTNG_LIFECYCLE_ANNOTATION_DESCRIPTORS = Arrays.asList(
+        "Lorg/testng/annotations/BeforeClass;",
+        "Lorg/testng/annotations/BeforeTest;",
+        "Lorg/testng/annotations/BeforeMethod;",
+        "Lorg/testng/annotations/AfterTest;",
+        "Lorg/testng/annotations/AfterClass;",
+        "Lorg/testng/annotations/AfterMethod;"
+    );
+
+    private final ClassMetadata metadata;
+    private final MetadataMethodVisitor methodVisitor = new MetadataMethodVisitor();
+
+    private String currentMethod;
+
+    ClassMetadataVisitor(String className) {
+        this.metadata = new ClassMetadata(className);
+    }
+
+    @Override
+    public ClassMetadata getResult() {
+        return metadata;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        metadata.superClassName = superName == null ? null : superName.replace('/', '.');
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        metadata.annotations.add(classDescriptorToClassName(descriptor));
+        if (descriptor.equals("Ljava/lang/annotation/Inherited;")) {
+            metadata.inheritedAnnotation = true;
+        } else if (descriptor.contains("spock/lang/Stepwise")) {
+            metadata.spockStepwise = true;
+        }
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        this.currentMethod = name;
+        return methodVisitor;
+    }
+
+    private static String classDescriptorToClassName(String descriptor) {
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    private final class MetadataMethodVisitor extends MethodVisitor {
+
+        private final SpockFeatureMetadataAnnotationVisitor spockFeatureMetadataVisitor = new SpockFeatureMetadataAnnotationVisitor();
+        private final TestNGTestAnnotationVisitor testNgTestAnnotationVisitor = new TestNGTestAnnotationVisitor();
+
+        MetadataMethodVisitor() {
+            super(ASM7);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (descriptor.contains("org/spockframework/runtime/model/FeatureMetadata")) {
+                return spockFeatureMetadataVisitor;
+            } else if (descriptor.contains("org/testng/annotations/Test")) {
+                return testNgTestAnnotationVisitor;
+            } else if (TESTNG_LIFECYCLE_ANNOTATION_DESCRIPTORS.contains(descriptor)) {
+                metadata.testNgLifecycleMethods.add(currentMethod);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Looking for signatures like:
+     * org/spockframework/runtime/model/FeatureMetadata;(
+     * line=15,
+     * name="unrolled with param #param",
+     * ordinal=0,
+     * blocks={...},
+     * parameterNames={"param", "result"}
+     * )
+     */
+    private final class SpockFeatureMetadataAnnotationVisitor extends AnnotationVisitor {
+
+        SpockFeatureMetadataAnnotationVisitor() {
+            super(ASM7);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if ("name".equals(name)) {
+                metadata.spockFeatureNames.add((String) value);
+            }
+        }
+    }
+
+    private final class TestNGTestAnnotationVisitor extends AnnotationVisitor {
+
+        private final TestNGTestDependsOnAnnotationVisitor dependsOnAnnotationVisitor = new TestNGTestDependsOnAnnotationVisitor();
+
+        TestNGTestAnnotationVisitor() {
+            super(ASM7);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            if ("dependsOnMethods".equals(name)) {
+                return dependsOnAnnotationVisitor;
+            }
+            return null;
+        }
+    }
+
+    private final class TestNGTestDependsOnAnnotationVisitor extends AnnotationVisitor {
+
+        TestNGTestDependsOnAnnotationVisitor() {
+            super(ASM7);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            String upstream = (String) value;
+            metadata.testNgDependsOn.computeIfAbsent(currentMethod, m -> new ArrayList<>()).add(upstream);
+            metadata.testNgDependedOn.computeIfAbsent(upstream, m -> new ArrayList<>()).add(currentMethod);
+        }
+    }
+}
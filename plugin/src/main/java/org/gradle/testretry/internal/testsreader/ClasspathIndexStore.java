@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Persists the class entries of the jars on the test runtime classpath between builds.
+ * <p>
+ * Each jar is keyed by its path, size and modification time, so unchanged jars do not need to be
+ * opened to find out which classes they contain. Hashing the content of the jars instead would mean
+ * reading all of them on every build, which is what the index avoids.
+ * The file is read into memory in one go, without holding on to it, so that it can be replaced afterwards,
+ * and entry lists are only decoded for jars that are still on the classpath and unchanged.
+ * A CRC32 of each entry list guards against reading a corrupt or partially written index.
+ * <p>
+ * The index is only rewritten when the jars that fit into its maximum size differ from the ones it holds.
+ * <p>
+ * The store is a cache: any problem reading or writing it results in the jars being scanned again.
+ */
+final class ClasspathIndexStore {
+
+    private static final Logger LOGGER = Logging.getLogger(ClasspathIndexStore.class);
+
+    private static final int MAGIC = 0x54524349; // "TRCI"
+    private static final int VERSION = 1;
+
+    static final long DEFAULT_MAX_SIZE_BYTES = 64L * 1024 * 1024;
+
+    private final File file;
+    private final long maxSizeBytes;
+
+    ClasspathIndexStore(File file, long maxSizeBytes) {
+        this.file = file;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    Contents load() {
+        if (!file.isFile()) {
+            return new Contents(null, Collections.emptyMap());
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return new Contents(null, Collections.emptyMap());
+            }
+
+            int jarCount = buffer.getInt();
+            Map<String, Record> records = new HashMap<>(jarCount * 2);
+            for (int i = 0; i < jarCount; i++) {
+                String path = readString(buffer, buffer.getInt());
+                long length = buffer.getLong();
+                long lastModified = buffer.getLong();
+                long checksum = buffer.getLong();
+                int entryCount = buffer.getInt();
+                int entriesLength = buffer.getInt();
+                records.put(path, new Record(length, lastModified, checksum, entryCount, buffer.position(), entriesLength));
+                buffer.position(buffer.position() + entriesLength);
+            }
+            return new Contents(buffer, records);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to read classpath index " + file + ", ignoring it", e);
+            return new Contents(null, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Stores the entries of the given jars, unless the stored contents already hold exactly the jars that fit.
+     */
+    void update(Contents stored, List<Jar> jars) {
+        List<byte[]> records = new ArrayList<>(jars.size());
+        boolean changed = false;
+        long size = 3 * Integer.BYTES;
+        try {
+            for (Jar jar : jars) {
+                byte[] record = encode(jar);
+                if (size + record.length > maxSizeBytes) {
+                    // jars that don't fit are scanned again next time
+                    break;
+                }
+                size += record.length;
+                records.add(record);
+                changed |= !stored.served.contains(jar.file.getAbsolutePath());
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to write classpath index " + file, e);
+            return;
+        }
+
+        if (changed || records.size() != stored.size()) {
+            store(records);
+        }
+    }
+
+    private void store(List<byte[]> records) {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(records.size());
+                for (byte[] record : records) {
+                    out.write(record);
+                }
+            }
+            moveIntoPlace(tmpFile);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to write classpath index " + file, e);
+            tmpFile.delete();
+        }
+    }
+
+    private void moveIntoPlace(File tmpFile) throws IOException {
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] encode(Jar jar) throws IOException {
+        ByteArrayOutputStream entriesBytes = new ByteArrayOutputStream(jar.entries.size() * 32);
+        DataOutputStream entriesOut = new DataOutputStream(entriesBytes);
+        for (String entry : jar.entries) {
+            byte[] bytes = entry.getBytes(UTF_8);
+            entriesOut.writeShort(bytes.length);
+            entriesOut.write(bytes);
+        }
+        byte[] encodedEntries = entriesBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(encodedEntries);
+
+        byte[] path = jar.file.getAbsolutePath().getBytes(UTF_8);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(path.length + encodedEntries.length + 40);
+        DataOutputStream out = new DataOutputStream(recordBytes);
+        out.writeInt(path.length);
+        out.write(path);
+        out.writeLong(jar.length);
+        out.writeLong(jar.lastModified);
+        out.writeLong(crc.getValue());
+        out.writeInt(jar.entries.size());
+        out.writeInt(encodedEntries.length);
+        out.write(encodedEntries);
+        return recordBytes.toByteArray();
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static final class Contents {
+
+        @Nullable
+        private final ByteBuffer buffer;
+        private final Map<String, Record> records;
+        // the paths of the jars whose entries were handed out, as they are unchanged
+        private final Set<String> served = new HashSet<>();
+
+        private Contents(@Nullable ByteBuffer buffer, Map<String, Record> records) {
+            this.buffer = buffer;
+            this.records = records;
+        }
+
+        /**
+         * The class entries of the given jar, or null if the jar is unknown or has changed since it was stored.
+         */
+        @Nullable
+        List<String> entries(File jar, long length, long lastModified) {
+            Record record = records.get(jar.getAbsolutePath());
+            if (buffer == null || record == null || record.length != length || record.lastModified != lastModified) {
+                return null;
+            }
+
+            ByteBuffer entriesBuffer = buffer.duplicate();
+            entriesBuffer.position(record.entriesOffset);
+            entriesBuffer.limit(record.entriesOffset + record.entriesLength);
+
+            byte[] encodedEntries = new byte[record.entriesLength];
+            entriesBuffer.get(encodedEntries);
+            CRC32 crc = new CRC32();
+            crc.update(encodedEntries);
+            if (crc.getValue() != record.checksum) {
+                return null;
+            }
+
+            ByteBuffer in = ByteBuffer.wrap(encodedEntries);
+            List<String> entries = new ArrayList<>(record.entryCount);
+            try {
+                for (int i = 0; i < record.entryCount; i++) {
+                    int entryLength = in.getShort() & 0xFFFF;
+                    entries.add(new String(encodedEntries, in.position(), entryLength, UTF_8));
+                    in.position(in.position() + entryLength);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return null;
+            }
+            served.add(jar.getAbsolutePath());
+            return entries;
+        }
+
+        int size() {
+            return records.size();
+        }
+    }
+
+    static final class Jar {
+
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final List<String> entries;
+
+        Jar(File file, long length, long lastModified, List<String> entries) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Record {
+
+        private final long length;
+        private final long lastModified;
+        private final long checksum;
+        private final int entryCount;
+        private final int entriesOffset;
+        private final int entriesLength;
+
+        private Record(long length, long lastModified, long checksum, int entryCount, int entriesOffset, int entriesLength) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.entryCount = entryCount;
+            this.entriesOffset = entriesOffset;
+            this.entriesLength = entriesLength;
+        }
+    }
+}
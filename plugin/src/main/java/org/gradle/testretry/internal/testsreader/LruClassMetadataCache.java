@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ClassMetadataCache} that evicts the least recently used entries once their estimated size exceeds a budget.
+ */
+public final class LruClassMetadataCache implements ClassMetadataCache {
+
+    private final LinkedHashMap<ClassFileKey, ClassMetadata> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long maxSizeBytes;
+    private long sizeBytes;
+
+    public LruClassMetadataCache(long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    @Override
+    public ClassMetadata get(ClassFileKey key, Supplier<ClassMetadata> loader) {
+        synchronized (this) {
+            ClassMetadata metadata = entries.get(key);
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+
+        // don't block other tasks while reading the class, at worst it is read twice
+        ClassMetadata metadata = loader.get();
+
+        synchronized (this) {
+            ClassMetadata previous = entries.put(key, metadata);
+            if (previous == null) {
+                sizeBytes += estimatedSize(key, metadata);
+            } else {
+                sizeBytes += estimatedSize(key, metadata) - estimatedSize(key, previous);
+            }
+            evict();
+        }
+        return metadata;
+    }
+
+    public synchronized void setMaxSizeBytes(long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+        evict();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<ClassFileKey, ClassMetadata>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+            Map.Entry<ClassFileKey, ClassMetadata> eldest = iterator.next();
+            sizeBytes -= estimatedSize(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long estimatedSize(ClassFileKey key, ClassMetadata metadata) {
+        return ClassMetadata.estimatedStringSize(key.getLocation()) + 32 + metadata.getEstimatedSizeBytes();
+    }
+}
@@ -18,39 +18,85 @@ package org.gradle.testretry.internal.testsreader;
 import org.jetbrains.annotations.NotNull;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.stream.Stream;
 
 import static org.objectweb.asm.Opcodes.ASM7;
 
-public final class TestsReader {
+/**
+ * Reads classes from the test classes dirs and the test runtime classpath.
+ * <p>
+ * The locations of all classes are indexed the first time a class is requested,
+ * so that subsequent lookups do not need to touch the file system or scan jars.
+ * Jars that contribute to the index are kept open until {@link #close()} is called.
+ * <p>
+ * If an index file is given, the class entries of jars are persisted between builds
+ * so that unchanged jars are only opened when a class is actually read from them.
+ * <p>
+ * If a shared {@link ClassMetadataCache} is given, class metadata is also reused between test tasks.
+ */
+public final class TestsReader implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestsReader.class);
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
 
     private final Set<File> testClassesDirs;
     private final Iterable<File> classpath;
+    @Nullable
+    private final ClasspathIndexStore indexStore;
+    @Nullable
+    private final ClassMetadataCache sharedMetadataCache;
+
+    private Index index;
+
+    private final Map<String, Optional<ClassMetadata>> metadataCache = new HashMap<>();
 
     public TestsReader(Set<File> testClassesDirs, Iterable<File> classpath) {
+        this(testClassesDirs, classpath, null, null);
+    }
+
+    public TestsReader(
+        Set<File> testClassesDirs,
+        Iterable<File> classpath,
+        @Nullable File indexFile,
+        @Nullable ClassMetadataCache sharedMetadataCache
+    ) {
         this.testClassesDirs = testClassesDirs;
         this.classpath = classpath;
+        this.indexStore = indexFile == null ? null : new ClasspathIndexStore(indexFile, ClasspathIndexStore.DEFAULT_MAX_SIZE_BYTES);
+        this.sharedMetadataCache = sharedMetadataCache;
     }
 
     // Finds classes only within the testClassesDir
     public <R> Optional<R> readTestClassDirClass(String className, Supplier<? extends Visitor<R>> factory) {
-        return testClassesDirs.stream()
-            .map(dir -> new File(dir, classFileName(className)))
-            .filter(File::exists)
-            .findFirst()
-            .map(file -> visitClassFile(file, factory.get()));
+        String classFileName = classFileName(className);
+        return visit(index().testClassesDirClasses.get(classFileName), classFileName, factory);
     }
 
+    // Finds classes within the testClassesDir and the rest of the classpath
     public <R> Optional<R> readClass(String className, Supplier<? extends Visitor<R>> factory) {
         Optional<R> opt = readTestClassDirClass(className, factory);
         if (opt.isPresent()) {
@@ -60,62 +106,125 @@ public final class TestsReader {
         }
     }
 
-    private <R> R visitClassFile(File file, Visitor<R> visitor) {
-        try (InputStream in = new FileInputStream(file)) {
-            return visit(in, visitor);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+    /**
+     * The metadata of the given class, if it is within the testClassesDir.
+     */
+    public Optional<ClassMetadata> readTestClassDirClassMetadata(String className) {
+        if (index().testClassesDirClasses.containsKey(classFileName(className))) {
+            // readClassMetadata() looks in the testClassesDir first
+            return readClassMetadata(className);
+        } else {
+            return Optional.empty();
         }
     }
 
-    private <R> R visit(InputStream in, Visitor<R> visitor) throws IOException {
-        ClassReader classReader = new ClassReader(in);
-        classReader.accept(visitor, 0);
-        return visitor.getResult();
+    /**
+     * The metadata of the given class, if it is within the testClassesDir or the rest of the classpath.
+     * <p>
+     * Each class is read and parsed at most once, regardless of how many consumers ask for it.
+     */
+    public synchronized Optional<ClassMetadata> readClassMetadata(String className) {
+        Optional<ClassMetadata> metadata = metadataCache.get(className);
+        if (metadata == null) {
+            String classFileName = classFileName(className);
+            ClassSource source = index().testClassesDirClasses.get(classFileName);
+            if (source == null) {
+                source = index().classpathClasses.get(classFileName);
+            }
+            try {
+                metadata = source == null ? Optional.empty() : Optional.of(readClassMetadata(className, classFileName, source));
+            } catch (UnreadableClassException e) {
+                metadata = Optional.empty();
+            }
+            metadataCache.put(className, metadata);
+        }
+        return metadata;
+    }
+
+    private ClassMetadata readClassMetadata(String className, String classFileName, ClassSource source) {
+        Supplier<ClassMetadata> loader = () -> source.visit(classFileName, new ClassMetadataVisitor(className));
+        if (sharedMetadataCache == null) {
+            return loader.get();
+        } else {
+            return sharedMetadataCache.get(source.key(classFileName), loader);
+        }
     }
-    // Finds classes within the testClassesDir and the rest of the classpath
 
     private <R> Optional<R> readClasspathClass(String className, Supplier<? extends Visitor<R>> factory) {
         String classFileName = classFileName(className);
-        for (File file : classpath) {
-            if (!file.exists()) {
-                continue;
-            }
+        return visit(index().classpathClasses.get(classFileName), classFileName, factory);
+    }
 
-            if (file.isDirectory()) {
-                File classFile = new File(file, classFileName);
-                if (classFile.exists()) {
-                    return Optional.of(visitClassFile(classFile, factory.get()));
-                } else {
-                    continue;
-                }
-            }
+    private static <R> Optional<R> visit(@Nullable ClassSource source, String classFileName, Supplier<? extends Visitor<R>> factory) {
+        if (source == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(source.visit(classFileName, factory.get()));
+        } catch (UnreadableClassException e) {
+            return Optional.empty();
+        }
+    }
 
-            if (!file.getName().endsWith(".jar")) {
-                continue;
+    private synchronized Index index() {
+        if (index == null) {
+            index = new Index();
+            for (File testClassesDir : testClassesDirs) {
+                if (testClassesDir.isDirectory()) {
+                    index.addDirectory(testClassesDir, index.testClassesDirClasses);
+                }
             }
 
-            try (JarFile jarFile = new JarFile(file)) {
-                Optional<JarEntry> classFile = jarFile.stream()
-                    .filter(maybeClass -> maybeClass.getName().equals(classFileName))
-                    .findAny();
-
-                if (classFile.isPresent()) {
-                    try (InputStream is = jarFile.getInputStream(classFile.get())) {
-                        return Optional.of(visit(is, factory.get()));
+            ClasspathIndexStore.Contents stored = indexStore == null ? null : indexStore.load();
+            List<ClasspathIndexStore.Jar> jars = new ArrayList<>();
+            for (File file : classpath) {
+                if (file.isDirectory()) {
+                    index.addDirectory(file, index.classpathClasses);
+                } else if (file.isFile() && file.getName().endsWith(".jar")) {
+                    long length = file.length();
+                    long lastModified = file.lastModified();
+                    List<String> entries = stored == null ? null : stored.entries(file, length, lastModified);
+                    if (entries == null) {
+                        entries = index.scanJar(file, length, lastModified);
+                    } else {
+                        index.addJar(new JarClassSource(file, length, lastModified), entries);
+                    }
+                    if (entries != null) {
+                        jars.add(new ClasspathIndexStore.Jar(file, length, lastModified, entries));
                     }
                 }
-            } catch (IOException ignored) {
-                // we tried... this file looks corrupt, move on to the next jar
             }
+
+            if (indexStore != null) {
+                indexStore.update(stored, jars);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Releases the jars held open by the index and the cached class metadata.
+     * The index is rebuilt if the reader is used again afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (index != null) {
+            index.close();
+            index = null;
         }
+        metadataCache.clear();
+    }
 
-        return Optional.empty();
+    private static <R> R visit(InputStream in, Visitor<R> visitor) throws IOException {
+        ClassReader classReader = new ClassReader(in);
+        // none of the visitors look at method bodies
+        classReader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return visitor.getResult();
     }
 
     @NotNull
-    private String classFileName(String className) {
-        return className.replace('.', '/') + ".class";
+    private static String classFileName(String className) {
+        return className.replace('.', '/') + CLASS_FILE_SUFFIX;
     }
 
     public abstract static class Visitor<T> extends ClassVisitor {
@@ -128,4 +237,167 @@ public final class TestsReader {
 
     }
 
+    private static final class Index {
+
+        // keyed by class file name, e.g. "acme/SomeTest.class"
+        private final Map<String, ClassSource> testClassesDirClasses = new HashMap<>();
+        private final Map<String, ClassSource> classpathClasses = new HashMap<>();
+        private final List<JarClassSource> jars = new ArrayList<>();
+
+        private void addDirectory(File dir, Map<String, ClassSource> classes) {
+            DirectoryClassSource source = new DirectoryClassSource(dir);
+            Path root = dir.toPath();
+            try (Stream<Path> files = Files.walk(root)) {
+                files
+                    .filter(path -> path.getFileName().toString().endsWith(CLASS_FILE_SUFFIX))
+                    .forEach(path -> classes.putIfAbsent(relativeClassFileName(root, path), source));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Nullable
+        private List<String> scanJar(File file, long length, long lastModified) {
+            JarFile jarFile;
+            try {
+                jarFile = new JarFile(file);
+            } catch (IOException ignored) {
+                // we tried... this file looks corrupt, move on to the next jar
+                return null;
+            }
+
+            List<String> classEntries = new ArrayList<>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(CLASS_FILE_SUFFIX)) {
+                    classEntries.add(name);
+                }
+            }
+
+            JarClassSource source = new JarClassSource(file, length, lastModified);
+            source.jarFile = jarFile;
+            addJar(source, classEntries);
+            return classEntries;
+        }
+
+        private void addJar(JarClassSource source, List<String> classEntries) {
+            boolean contributed = false;
+            for (String name : classEntries) {
+                if (classpathClasses.putIfAbsent(name, source) == null) {
+                    contributed = true;
+                }
+            }
+
+            if (contributed) {
+                jars.add(source);
+            } else {
+                source.close();
+            }
+        }
+
+        private void close() {
+            jars.forEach(JarClassSource::close);
+            jars.clear();
+        }
+
+        private static String relativeClassFileName(Path root, Path classFile) {
+            String relativePath = root.relativize(classFile).toString();
+            return File.separatorChar == '/' ? relativePath : relativePath.replace(File.separatorChar, '/');
+        }
+
+    }
+
+    private interface ClassSource {
+
+        <R> R visit(String classFileName, Visitor<R> visitor);
+
+        ClassFileKey key(String classFileName);
+
+    }
+
+    private static final class DirectoryClassSource implements ClassSource {
+
+        private final File dir;
+
+        private DirectoryClassSource(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public <R> R visit(String classFileName, Visitor<R> visitor) {
+            try (InputStream in = Files.newInputStream(new File(dir, classFileName).toPath())) {
+                return TestsReader.visit(in, visitor);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public ClassFileKey key(String classFileName) {
+            File classFile = new File(dir, classFileName);
+            return new ClassFileKey(classFile.getAbsolutePath(), classFile.length(), classFile.lastModified());
+        }
+    }
+
+    /**
+     * Thrown when a class of a jar can't be read, so that it is treated as not found rather than failing the caller.
+     */
+    private static final class UnreadableClassException extends RuntimeException {
+
+        private UnreadableClassException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class JarClassSource implements ClassSource {
+
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private JarFile jarFile;
+
+        private JarClassSource(File file, long length, long lastModified) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public synchronized <R> R visit(String classFileName, Visitor<R> visitor) {
+            try {
+                if (jarFile == null) {
+                    jarFile = new JarFile(file);
+                }
+                JarEntry entry = jarFile.getJarEntry(classFileName);
+                if (entry == null) {
+                    throw new FileNotFoundException(classFileName + " in " + file);
+                }
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    return TestsReader.visit(in, visitor);
+                }
+            } catch (IOException e) {
+                // we tried... this jar looks corrupt or was rewritten since it was indexed, treat the class as not found
+                LOGGER.debug("Unable to read {} from {}", classFileName, file, e);
+                throw new UnreadableClassException();
+            }
+        }
+
+        @Override
+        public ClassFileKey key(String classFileName) {
+            return new ClassFileKey(file.getAbsolutePath() + "!/" + classFileName, length, lastModified);
+        }
+
+        private synchronized void close() {
+            if (jarFile != null) {
+                try {
+                    jarFile.close();
+                } catch (IOException ignored) {
+                    // nothing we can do about it
+                }
+                jarFile = null;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.worker;
+
+import org.gradle.testretry.internal.filter.FailureRules;
+import org.gradle.testretry.internal.filter.GlobMatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The retry settings of a test task, as seen by a test worker that retries failed tests itself.
+ * <p>
+ * The plugin writes them into the jar it adds to the test runtime classpath, from which the worker reads them back.
+ * This class is loaded on both sides, so it must only depend on the JDK, and it matches with the plugin's
+ * {@link GlobMatcher} and {@link FailureRules}, which are added to the jar as well. Each pattern is stored
+ * as a property of its own, indexed by its position in the list, so that patterns may contain any character.
+ * <p>
+ * The worker applies the retry filter to the loaded test classes, so annotation filters only see annotations
+ * with runtime retention. Failure rules see the loaded exception classes, while the plugin resolves exceptions that
+ * the build can't load through the test runtime classpath, which both lead to the same super classes.
+ * The maximum number of failures is counted per worker.
+ */
+public final class WorkerRetryConfig {
+
+    public static final String RESOURCE_NAME = "org/gradle/testretry/internal/worker/retry.properties";
+
+    private static final String MAX_RETRIES = "maxRetries";
+    private static final String MAX_FAILURES = "maxFailures";
+    private static final String INCLUDE_CLASSES = "includeClasses";
+    private static final String INCLUDE_ANNOTATION_CLASSES = "includeAnnotationClasses";
+    private static final String EXCLUDE_CLASSES = "excludeClasses";
+    private static final String EXCLUDE_ANNOTATION_CLASSES = "excludeAnnotationClasses";
+    private static final String INCLUDE_FAILURES = "includeFailures";
+    private static final String EXCLUDE_FAILURES = "excludeFailures";
+
+    private static WorkerRetryConfig instance;
+
+    private final int maxRetries;
+    private final int maxFailures;
+    private final GlobMatcher includeClasses;
+    private final GlobMatcher includeAnnotationClasses;
+    private final GlobMatcher excludeClasses;
+    private final GlobMatcher excludeAnnotationClasses;
+    private final FailureRules failureRules;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private WorkerRetryConfig(Properties properties) {
+        this.maxRetries = Integer.parseInt(properties.getProperty(MAX_RETRIES, "0"));
+        this.maxFailures = Integer.parseInt(properties.getProperty(MAX_FAILURES, "0"));
+        this.includeClasses = GlobMatcher.compile(list(properties, INCLUDE_CLASSES));
+        this.includeAnnotationClasses = GlobMatcher.compile(list(properties, INCLUDE_ANNOTATION_CLASSES));
+        this.excludeClasses = GlobMatcher.compile(list(properties, EXCLUDE_CLASSES));
+        this.excludeAnnotationClasses = GlobMatcher.compile(list(properties, EXCLUDE_ANNOTATION_CLASSES));
+        this.failureRules = new FailureRules(list(properties, INCLUDE_FAILURES), list(properties, EXCLUDE_FAILURES), new LoadedTypeHierarchy());
+    }
+
+    public static synchronized WorkerRetryConfig get() {
+        if (instance == null) {
+            try (InputStream in = WorkerRetryConfig.class.getClassLoader().getResourceAsStream(RESOURCE_NAME)) {
+                instance = in == null ? new WorkerRetryConfig(new Properties()) : read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return instance;
+    }
+
+    static WorkerRetryConfig read(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        return new WorkerRetryConfig(properties);
+    }
+
+    public static void write(
+        OutputStream out,
+        int maxRetries,
+        int maxFailures,
+        Collection<String> includeClasses,
+        Collection<String> includeAnnotationClasses,
+        Collection<String> excludeClasses,
+        Collection<String> excludeAnnotationClasses,
+        Collection<String> includeFailures,
+        Collection<String> excludeFailures
+    ) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(MAX_RETRIES, Integer.toString(maxRetries));
+        properties.setProperty(MAX_FAILURES, Integer.toString(maxFailures));
+        setList(properties, INCLUDE_CLASSES, includeClasses);
+        setList(properties, INCLUDE_ANNOTATION_CLASSES, includeAnnotationClasses);
+        setList(properties, EXCLUDE_CLASSES, excludeClasses);
+        setList(properties, EXCLUDE_ANNOTATION_CLASSES, excludeAnnotationClasses);
+        setList(properties, INCLUDE_FAILURES, includeFailures);
+        setList(properties, EXCLUDE_FAILURES, excludeFailures);
+        properties.store(out, null);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Whether failures of tests of the given class may be retried, following the same rules as the plugin's retry filter.
+     */
+    public boolean canRetry(Class<?> testClass) {
+        String className = testClass.getName();
+        if (!includeClasses.isEmpty() && !includeClasses.matches(className)) {
+            return false;
+        }
+        if (excludeClasses.matches(className)) {
+            return false;
+        }
+
+        Set<String> annotations = null;
+        if (!includeAnnotationClasses.isEmpty()) {
+            annotations = annotations(testClass);
+            if (!includeAnnotationClasses.matchesAny(annotations)) {
+                return false;
+            }
+        }
+        if (!excludeAnnotationClasses.isEmpty()) {
+            annotations = annotations == null ? annotations(testClass) : annotations;
+            return !excludeAnnotationClasses.matchesAny(annotations);
+        }
+        return true;
+    }
+
+    /**
+     * Whether a test that failed this way may be retried, following the same rules as the plugin's failure filter.
+     */
+    public boolean canRetry(Throwable failure) {
+        return failureRules.canRetry(failure);
+    }
+
+    /**
+     * Counts a test that failed for the first time, returning whether it may still be retried.
+     * Once the maximum number of failures is reached, no further tests are retried.
+     */
+    public boolean startRetrying() {
+        int failed = failures.incrementAndGet();
+        return maxFailures <= 0 || failed < maxFailures;
+    }
+
+    private static Set<String> annotations(Class<?> testClass) {
+        // includes @Inherited annotations of super classes
+        Set<String> annotations = new LinkedHashSet<>();
+        for (Annotation annotation : testClass.getAnnotations()) {
+            annotations.add(annotation.annotationType().getName());
+        }
+        return annotations;
+    }
+
+    private static void setList(Properties properties, String key, Collection<String> values) {
+        int index = 0;
+        for (String value : values) {
+            properties.setProperty(key + '.' + index++, value);
+        }
+    }
+
+    private static List<String> list(Properties properties, String key) {
+        List<String> values = new ArrayList<>();
+        String value;
+        while ((value = properties.getProperty(key + '.' + values.size())) != null) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static final class LoadedTypeHierarchy implements FailureRules.TypeHierarchy {
+
+        @Override
+        public String className(Throwable exception) {
+            return exception.getClass().getName();
+        }
+
+        @Override
+        public Set<String> of(Throwable exception) {
+            Set<String> hierarchy = new LinkedHashSet<>();
+            for (Class<?> type = exception.getClass(); type != null; type = type.getSuperclass()) {
+                hierarchy.add(type.getName());
+            }
+            return hierarchy;
+        }
+    }
+}
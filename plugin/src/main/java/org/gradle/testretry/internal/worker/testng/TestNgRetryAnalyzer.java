@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.worker.testng;
+
+import org.gradle.testretry.internal.worker.WorkerRetryConfig;
+import org.testng.IRetryAnalyzer;
+import org.testng.ITestResult;
+
+/**
+ * Retries a failed test method in place, up to the maximum number of retries.
+ * <p>
+ * TestNG creates an instance per test method, runs the method's configuration methods again for each attempt,
+ * and reports the failed attempts as skipped.
+ */
+public final class TestNgRetryAnalyzer implements IRetryAnalyzer {
+
+    private final WorkerRetryConfig config = WorkerRetryConfig.get();
+
+    private int retries;
+
+    @Override
+    public boolean retry(ITestResult result) {
+        if (retries >= config.getMaxRetries() || !config.canRetry(result.getThrowable())) {
+            return false;
+        }
+        if (retries == 0 && (!config.canRetry(result.getTestClass().getRealClass()) || !config.startRetrying())) {
+            return false;
+        }
+        retries++;
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.worker.testng;
+
+import org.testng.IAnnotationTransformer;
+import org.testng.annotations.ITestAnnotation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Sets {@link TestNgRetryAnalyzer} as the retry analyzer of all test methods that don't declare their own.
+ * <p>
+ * Registered by the plugin as a TestNG listener, and loaded in the test worker.
+ */
+public final class TestNgRetryListener implements IAnnotationTransformer {
+
+    private static final String DISABLED_RETRY_ANALYZER = "org.testng.internal.annotations.DisabledRetryAnalyzer";
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void transform(ITestAnnotation annotation, Class testClass, Constructor testConstructor, Method testMethod) {
+        if (!hasRetryAnalyzer(annotation)) {
+            annotation.setRetryAnalyzer(TestNgRetryAnalyzer.class);
+        }
+    }
+
+    private static boolean hasRetryAnalyzer(ITestAnnotation annotation) {
+        try {
+            Class<?> retryAnalyzer = annotation.getRetryAnalyzerClass();
+            return retryAnalyzer != null && !retryAnalyzer.getName().equals(DISABLED_RETRY_ANALYZER);
+        } catch (NoSuchMethodError | AbstractMethodError e) {
+            // TestNG 6 can't tell, assume there is none
+            return false;
+        }
+    }
+}
@@ -16,6 +16,9 @@
 package org.gradle.testretry
 
 import org.gradle.testretry.internal.config.TestRetryTaskExtensionAdapter
+import org.gradle.util.GradleVersion
+
+import static org.junit.Assume.assumeTrue
 
 class CorePluginFuncTest extends AbstractGeneralPluginFuncTest {
 
@@ -190,4 +193,389 @@ class CorePluginFuncTest extends AbstractGeneralPluginFuncTest {
         where:
         gradleVersion << GRADLE_VERSIONS_UNDER_TEST
     }
+
+    def "stops early without retrying when too many tests fail (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 3
+                stopAfterFailures = 1
+            }
+        """
+
+        when:
+        failedTest()
+
+        then:
+        def result = gradleRunner(gradleVersion).buildAndFail()
+        result.output.contains("Stopped the tests of :test early as 1 of 1 completed tests failed. Failed tests are not retried.")
+        result.output.count('failedTest FAILED') == 1
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "optionally does not retry tests that fail the same way again (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 3
+                retryIdenticalFailures = false
+            }
+        """
+
+        when:
+        failedTest()
+
+        then:
+        def result = gradleRunner(gradleVersion).buildAndFail()
+        result.output.contains("Not retrying 1 failed tests of :test, as they failed the same way as in their previous attempt")
+        result.output.count('failedTest FAILED') == 2
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "can retry failed tests while the test suite is running (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 1
+                pipelineRetries = true
+            }
+        """
+
+        successfulTest()
+        failedTest()
+
+        when:
+        def result = gradleRunner(gradleVersion).buildAndFail()
+
+        then:
+        // 2 individual tests FAILED + 1 overall task FAILED + 1 overall build FAILED
+        result.output.count('FAILED') == 2 + 1 + 1
+
+        assertTestReportContains("SuccessfulTests", reportedTestName("successTest"), 1, 0)
+        assertTestReportContains("FailedTests", reportedTestName("failedTest"), 0, 2)
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "passes when flaky tests pass while the test suite is running (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 1
+                pipelineRetries = true
+            }
+        """
+
+        successfulTest()
+        flakyTest()
+
+        when:
+        def result = gradleRunner(gradleVersion).build()
+
+        then:
+        result.output.count('FAILED') == 1
+
+        assertTestReportContains("FlakyTests", reportedTestName("flaky"), 1, 1)
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "retries failed tests in parallel with the tests that are still running (gradle version #gradleVersion)"() {
+        given:
+        assumeTrue("$gradleVersion can't run retries in parallel", isAtLeastGradle7_6(gradleVersion))
+
+        buildFile << """
+            test.maxParallelForks = 2
+            test.retry {
+                maxRetries = 1
+                pipelineRetries = true
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            import java.nio.file.*;
+
+            public class FlakyTests {
+                @org.junit.Test
+                public void flaky() throws Exception {
+                    Path failed = Paths.get("build/marker.file.failed");
+                    if (!Files.exists(failed)) {
+                        Files.createFile(failed);
+                        throw new AssertionError("fails the first time");
+                    }
+                    Files.createFile(Paths.get("build/marker.file.retried"));
+                }
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            import java.nio.file.*;
+
+            public class WaitingTests {
+                @org.junit.Test
+                public void waitsForTheRetry() throws Exception {
+                    // only passes if the flaky test is retried while this test is still running
+                    Path retried = Paths.get("build/marker.file.retried");
+                    for (int i = 0; i < 600 && !Files.exists(retried); i++) {
+                        Thread.sleep(100);
+                    }
+                    org.junit.Assert.assertTrue(Files.exists(retried));
+                }
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion, 'test', '--info', '--max-workers=4').build()
+
+        then:
+        !result.output.contains('Unable to retry tests while')
+        result.output.count('FlakyTests > flaky FAILED') == 1
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "retries failed tests more than once while the test suite is running (gradle version #gradleVersion)"() {
+        given:
+        assumeTrue("$gradleVersion can't run retries in parallel", isAtLeastGradle7_6(gradleVersion))
+
+        buildFile << """
+            test.maxParallelForks = 2
+            test.retry {
+                maxRetries = 2
+                pipelineRetries = true
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            import java.nio.file.*;
+
+            public class FlakyTests {
+                @org.junit.Test
+                public void flaky() throws Exception {
+                    Path attempts = Paths.get("build/marker.file.attempts");
+                    int attempt = Files.exists(attempts) ? Integer.parseInt(new String(Files.readAllBytes(attempts))) + 1 : 1;
+                    Files.write(attempts, Integer.toString(attempt).getBytes());
+                    if (attempt < 3) {
+                        throw new AssertionError("fails attempt " + attempt);
+                    }
+                    Files.createFile(Paths.get("build/marker.file.retried"));
+                }
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            import java.nio.file.*;
+
+            public class WaitingTests {
+                @org.junit.Test
+                public void waitsForTheRetries() throws Exception {
+                    // only passes if the flaky test is retried twice while this test is still running
+                    Path retried = Paths.get("build/marker.file.retried");
+                    for (int i = 0; i < 600 && !Files.exists(retried); i++) {
+                        Thread.sleep(100);
+                    }
+                    org.junit.Assert.assertTrue(Files.exists(retried));
+                }
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion, 'test', '--info', '--max-workers=4').build()
+
+        then:
+        !result.output.contains('Unable to retry tests while')
+        result.output.count('FlakyTests > flaky FAILED') == 2
+
+        assertTestReportContains("WaitingTests", reportedTestName("waitsForTheRetries"), 1, 0)
+        assertTestReportContains("FlakyTests", reportedTestName("flaky"), 1, 2)
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "retries quarantined tests separately from the other tests (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 1
+                quarantine {
+                    classes.add("acme.Failed*")
+                    maxRetries = 2
+                }
+            }
+        """
+
+        successfulTest()
+        failedTest()
+
+        when:
+        def result = gradleRunner(gradleVersion).buildAndFail()
+
+        then:
+        // 3 individual tests FAILED + 1 overall task FAILED + 1 overall build FAILED
+        result.output.count('FAILED') == 3 + 1 + 1
+
+        assertTestReportContains("SuccessfulTests", reportedTestName("successTest"), 1, 0)
+        assertTestReportContains("FailedTests", reportedTestName("failedTest"), 0, 3)
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "passes when quarantined flaky tests pass on retry (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 1
+                quarantine {
+                    classes.add("acme.Flaky*")
+                }
+            }
+        """
+
+        successfulTest()
+        flakyTest()
+
+        when:
+        def result = gradleRunner(gradleVersion).build()
+
+        then:
+        result.output.count('FAILED') == 1
+
+        assertTestReportContains("SuccessfulTests", reportedTestName("successTest"), 1, 0)
+        assertTestReportContains("FlakyTests", reportedTestName("flaky"), 1, 1)
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "passes when quarantined flaky tests pass on their last retry (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 1
+                quarantine {
+                    classes.add("acme.Flaky*")
+                    maxRetries = 2
+                }
+            }
+        """
+
+        successfulTest()
+        writeTestSource """
+            package acme;
+
+            public class FlakyTests {
+                @org.junit.Test
+                public void flaky() {
+                    ${flakyAssert("id", 2)}
+                }
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion).build()
+
+        then:
+        result.output.count('FAILED') == 2
+
+        assertTestReportContains("SuccessfulTests", reportedTestName("successTest"), 1, 0)
+        assertTestReportContains("FlakyTests", reportedTestName("flaky"), 1, 2)
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "ignores a malformed class metadata cache size (gradle version #gradleVersion)"() {
+        given:
+        // the cache is a build service, which requires Gradle 6.1
+        assumeTrue(ConfigCachingPluginFuncTest.isAtLeastGradle6_1(gradleVersion))
+        buildFile << """
+            test.retry.maxRetries = 1
+        """
+
+        successfulTest()
+
+        when:
+        def result = gradleRunner(gradleVersion, 'test', '-S', '-Porg.gradle.testretry.classMetadataCacheMaxSizeMb=lots').build()
+
+        then:
+        result.output.contains("Ignoring the value 'lots' of the org.gradle.testretry.classMetadataCacheMaxSizeMb property, which is not a size in MB. Using the default of 32 MB instead.")
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "does not retry tests filtered out on the command line (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry.maxRetries = 1
+        """
+
+        writeTestSource """
+            package acme;
+
+            import static org.junit.Assert.assertTrue;
+
+            public class FilteredTests {
+                @org.junit.Test
+                public void bar() {
+                    assertTrue(false);
+                }
+
+                @org.junit.Test
+                public void baz() {
+                }
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion, 'test', '-S', '--tests', 'acme.FilteredTests.bar').buildAndFail()
+
+        then:
+        result.output.count('FilteredTests > bar FAILED') == 2
+        !result.output.contains('FilteredTests > baz')
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "logs that retry rounds ignore forkEvery (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.forkEvery = 1
+            test.retry.maxRetries = 1
+            test.retry.ignoreForkEveryOnRetry = true
+        """
+
+        when:
+        flakyTest()
+
+        then:
+        def result = gradleRunner(gradleVersion, 'test', '--info').build()
+        result.output.contains('Retry rounds of :test ignore forkEvery = 1, so retried classes share their test worker JVMs')
+        result.output.count('FlakyTests > flaky FAILED') == 1
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    private static boolean isAtLeastGradle7_6(String gradleVersion) {
+        GradleVersion.version(gradleVersion) >= GradleVersion.version("7.6")
+    }
 }
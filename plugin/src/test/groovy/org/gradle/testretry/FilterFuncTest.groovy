@@ -128,6 +128,38 @@ class FilterFuncTest extends AbstractGeneralPluginFuncTest {
         gradleVersion << GRADLE_VERSIONS_UNDER_TEST
     }
 
+    def "can filter what is retried by failure (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 2
+                filter {
+                    includeFailures.add("java.io.IOException: *refused*")
+                    excludeFailures.add("java.io.FileNotFoundException")
+                }
+            }
+        """
+
+        and:
+        failingTest("RefusedTest", "new java.io.UncheckedIOException(new java.net.ConnectException(\"Connection refused\"))")
+        failingTest("ResetTest", "new java.io.UncheckedIOException(new java.io.IOException(\"Connection reset\"))")
+        failingTest("MissingTest", "new java.io.UncheckedIOException(new java.io.FileNotFoundException(\"refused\"))")
+
+        when:
+        def result = gradleRunner(gradleVersion).buildAndFail()
+
+        then:
+        result.output.count("acme.RefusedTest > flakyTest FAILED") == 2
+        result.output.count("acme.RefusedTest > flakyTest PASSED") == 1
+        ["ResetTest", "MissingTest"].each {
+            assert result.output.count("acme.${it} > flakyTest FAILED") == 1
+            assert result.output.count("acme.${it} > flakyTest PASSED") == 0
+        }
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
     private void nonInheritedAnnotation(String name) {
         file("src/test/java/acme/${name}.java") << """
             package acme;
@@ -171,4 +203,20 @@ class FilterFuncTest extends AbstractGeneralPluginFuncTest {
         """
         return name
     }
+
+    private void failingTest(String name, String failure) {
+        file("src/test/java/acme/${name}.java") << """
+            package acme;
+            public class $name {
+                @org.junit.Test
+                public void flakyTest() {
+                    try {
+                        ${flakyAssert(name, 2)}
+                    } catch (RuntimeException e) {
+                        throw $failure;
+                    }
+                }
+            }
+        """
+    }
 }
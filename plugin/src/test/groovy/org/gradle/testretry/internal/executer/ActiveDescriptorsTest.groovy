@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal
+import spock.lang.Specification
+
+class ActiveDescriptorsTest extends Specification {
+
+    // the table starts with 64 slots
+    private static final int LAST_SLOT = 63
+
+    def descriptors = new ActiveDescriptors()
+
+    def "tracks tests whose ids collide and wrap around the end of the table"() {
+        given:
+        def ids = (1..4).collect { new Id(it, LAST_SLOT - 1) }
+        ids.each { descriptors.put(test(it), null, it.value * 10) }
+
+        expect:
+        descriptors.size() == 4
+        ids.every { descriptors.get(it).id == it }
+        ids.every { descriptors.getStartTime(it) == it.value * 10 }
+        descriptors.get(new Id(5, LAST_SLOT - 1)) == null
+        descriptors.getStartTime(new Id(5, LAST_SLOT - 1)) == ActiveDescriptors.NO_START_TIME
+    }
+
+    def "finds the tests displaced by a removal"() {
+        given:
+        def ids = (1..4).collect { new Id(it, LAST_SLOT) }
+        def other = new Id(5, 1)
+        (ids + other).each { descriptors.put(test(it), null, it.value) }
+
+        when:
+        def removed = descriptors.remove(ids[removedIndex])
+
+        then:
+        removed.id == ids[removedIndex]
+        descriptors.size() == 4
+        descriptors.get(ids[removedIndex]) == null
+        descriptors.remove(ids[removedIndex]) == null
+        (ids - ids[removedIndex] + other).every { descriptors.get(it).id == it && descriptors.getStartTime(it) == it.value }
+
+        where:
+        removedIndex << [0, 1, 2, 3]
+    }
+
+    def "keeps tests, their parents and start times when growing"() {
+        given:
+        def ids = (1..200).collect { new Id(it, it % 7) }
+        ids.each { descriptors.put(test(it), it.value == 1 ? null : ids[it.value - 2], it.value) }
+
+        expect:
+        descriptors.size() == 200
+        ids.every { descriptors.get(it).id == it }
+        ids.every { descriptors.getStartTime(it) == it.value }
+        ids.drop(1).every { descriptors.getParentId(it) == ids[it.value - 2] }
+
+        when:
+        ids.findAll { it.value % 2 == 0 }.each { descriptors.remove(it) }
+
+        then:
+        descriptors.size() == 100
+        ids.every { descriptors.get(it)?.id == (it.value % 2 == 0 ? null : it) }
+    }
+
+    def "replaces a test that is put again"() {
+        given:
+        def id = new Id(1, 1)
+        descriptors.put(test(id), null, 10)
+
+        when:
+        descriptors.put(test(id), null, 20)
+
+        then:
+        descriptors.size() == 1
+        descriptors.getStartTime(id) == 20
+    }
+
+    def "counts tests towards the closest class"() {
+        given:
+        def root = new Id(1, 1)
+        def clazz = new Id(2, 2)
+        def method = new Id(3, 3)
+        def iteration = new Id(4, 4)
+        descriptors.put(composite(root, null))
+        descriptors.put(composite(clazz, "acme.Test1"), root, 1)
+        descriptors.put(composite(method, "feature"), clazz, ActiveDescriptors.NO_START_TIME)
+        descriptors.put(test(iteration), method, ActiveDescriptors.NO_START_TIME)
+
+        when:
+        descriptors.countTest(clazz)
+        descriptors.countTest(method)
+        descriptors.countTest(root)
+        descriptors.countTest(new Id(5, 5))
+        descriptors.countTest(null)
+
+        then:
+        descriptors.getTestCount(clazz) == 2
+        descriptors.getTestCount(method) == 0
+        descriptors.getTestCount(new Id(5, 5)) == 0
+    }
+
+    def "forgets all tests when cleared"() {
+        given:
+        def ids = (1..10).collect { new Id(it, it) }
+        ids.each { descriptors.put(test(it), null, it.value) }
+
+        when:
+        descriptors.clear()
+
+        then:
+        descriptors.size() == 0
+        ids.every { descriptors.get(it) == null && descriptors.getStartTime(it) == ActiveDescriptors.NO_START_TIME }
+    }
+
+    private static TestDescriptorInternal test(Id id) {
+        descriptor(id, "acme.Test1", "test${id.value}", false)
+    }
+
+    private static TestDescriptorInternal composite(Id id, String name) {
+        descriptor(id, name == null ? null : "acme.Test1", name, true)
+    }
+
+    private static TestDescriptorInternal descriptor(Id id, String className, String name, boolean composite) {
+        [
+            getId: { id },
+            getClassName: { className },
+            getName: { name },
+            isComposite: { composite },
+            toString: { "$name ($id)".toString() }
+        ] as TestDescriptorInternal
+    }
+
+    // an id with a chosen hash code, to control the slot it lands in
+    private static final class Id {
+
+        final int value
+        final int hash
+
+        Id(int value, int hash) {
+            this.value = value
+            this.hash = hash
+        }
+
+        @Override
+        boolean equals(Object o) {
+            o instanceof Id && ((Id) o).value == value
+        }
+
+        @Override
+        int hashCode() {
+            hash
+        }
+
+        @Override
+        String toString() {
+            "id$value"
+        }
+    }
+}
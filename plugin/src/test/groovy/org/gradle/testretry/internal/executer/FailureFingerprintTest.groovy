@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import spock.lang.Specification
+
+class FailureFingerprintTest extends Specification {
+
+    def "is the same for failures thrown the same way"() {
+        expect:
+        FailureFingerprint.of(fail("expected 1 but was 2")) == FailureFingerprint.of(fail("expected 1 but was 2"))
+    }
+
+    def "ignores identity hash codes in messages"() {
+        expect:
+        FailureFingerprint.of(fail("unexpected acme.Thing@1b6d3586")) == FailureFingerprint.of(fail("unexpected acme.Thing@4554617c"))
+    }
+
+    def "differs for different messages, types and causes"() {
+        given:
+        def fingerprint = FailureFingerprint.of(fail("expected 1 but was 2"))
+
+        expect:
+        FailureFingerprint.of(fail("expected 1 but was 3")) != fingerprint
+        FailureFingerprint.of(fail("expected 1 but was 2", new IllegalStateException("cause"))) != fingerprint
+        FailureFingerprint.of(withStackTrace(new IllegalStateException("expected 1 but was 2"))) != FailureFingerprint.of(fail("expected 1 but was 2"))
+    }
+
+    def "differs for failures thrown from different places"() {
+        given:
+        def failure = fail("expected 1 but was 2")
+        def elsewhere = fail("expected 1 but was 2")
+        elsewhere.stackTrace = [new StackTraceElement("acme.SomeTest", "other", "SomeTest.java", 12)] as StackTraceElement[]
+
+        expect:
+        FailureFingerprint.of(failure) != FailureFingerprint.of(elsewhere)
+    }
+
+    def "combines several failures depending on their order"() {
+        given:
+        def first = FailureFingerprint.of(fail("first"))
+        def second = FailureFingerprint.of(fail("second"))
+
+        expect:
+        FailureFingerprint.combine(first, second) != FailureFingerprint.combine(second, first)
+    }
+
+    private static AssertionError fail(String message, Throwable cause = null) {
+        withStackTrace(new AssertionError(message, cause))
+    }
+
+    private static <T extends Throwable> T withStackTrace(T failure) {
+        failure.stackTrace = [
+            new StackTraceElement("acme.SomeTest", "test", "SomeTest.java", 42),
+            new StackTraceElement("org.junit.runners.ParentRunner", "run", "ParentRunner.java", 363)
+        ] as StackTraceElement[]
+        failure
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import org.gradle.testretry.internal.filter.AnnotationInspector
+import spock.lang.Specification
+
+class QuarantineTest extends Specification {
+
+    def annotations = [
+        "acme.FlakyTest": ["acme.Flaky"] as Set,
+        "acme.StableTest": ["acme.Stable"] as Set
+    ]
+    def annotationInspector = { String className -> annotations.getOrDefault(className, [] as Set) } as AnnotationInspector
+
+    def "quarantines classes matching either the class or the annotation patterns"() {
+        given:
+        def quarantine = new Quarantine(annotationInspector, ["acme.Slow*"], ["*.Flaky"])
+
+        expect:
+        quarantine.isQuarantined(className) == quarantined
+
+        where:
+        className          | quarantined
+        "acme.SlowTest"    | true
+        "acme.FlakyTest"   | true
+        "acme.StableTest"  | false
+        "other.SlowTest"   | false
+    }
+
+    def "does not quarantine classes by their annotations without annotation patterns"() {
+        given:
+        def quarantine = new Quarantine(annotationInspector, ["acme.Slow*"], [])
+
+        expect:
+        !quarantine.isQuarantined("acme.FlakyTest")
+        !quarantine.isQuarantined("acme.StableTest")
+    }
+
+    def "quarantines nothing without patterns"() {
+        given:
+        def quarantine = new Quarantine(annotationInspector, [], [])
+
+        expect:
+        !quarantine.isQuarantined("acme.SlowTest")
+        !quarantine.isQuarantined("acme.FlakyTest")
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class RetryBudgetTest extends Specification {
+
+    @Rule
+    TemporaryFolder dir = new TemporaryFolder()
+
+    long now = 0
+    def planner = new RetryForkPlanner(1, 1)
+
+    def setup() {
+        planner.forkStarted(0)
+    }
+
+    def "retries all failed tests without a budget"() {
+        given:
+        def budget = new RetryBudget(0, { now })
+        def leftOut = new TestNames()
+
+        when:
+        def selected = budget.select(tests("acme.Test1", "acme.Test2"), ["acme.Test1": 60_000L, "acme.Test2": 60_000L], planner, leftOut)
+
+        then:
+        selected.classNames() == ["acme.Test1", "acme.Test2"] as Set
+        leftOut.empty
+    }
+
+    def "retries the cheapest classes that fit into the budget"() {
+        given:
+        def budget = new RetryBudget(10_000, { now })
+        def leftOut = new TestNames()
+
+        when:
+        def selected = budget.select(
+            tests("acme.Test1", "acme.Test2", "acme.Test3"),
+            ["acme.Test1": 8_000L, "acme.Test2": 2_000L, "acme.Test3": 3_000L],
+            planner,
+            leftOut
+        )
+
+        then:
+        selected.classNames() == ["acme.Test2", "acme.Test3"] as Set
+        leftOut.classNames() == ["acme.Test1"] as Set
+    }
+
+    def "prefers the classes most likely to pass per second"() {
+        given:
+        def file = new File(dir.root, "history.bin")
+        5.times {
+            def history = TestHistory.load(file)
+            history.testCompleted("acme.Test1", "test", true, false, 4_000, 0)
+            history.testCompleted("acme.Test2", "test", true, true, 2_000, 1)
+            history.store()
+        }
+        def budget = new RetryBudget(8_000, TestHistory.load(file), { now })
+        def leftOut = new TestNames()
+
+        when:
+        def selected = budget.select(
+            tests("acme.Test1", "acme.Test2", "acme.Test3"),
+            ["acme.Test1": 4_000L, "acme.Test2": 2_000L, "acme.Test3": 3_000L],
+            planner,
+            leftOut
+        )
+
+        then:
+        selected.classNames() == ["acme.Test1", "acme.Test3"] as Set
+        leftOut.classNames() == ["acme.Test2"] as Set
+    }
+
+    def "counts the budget from the first retry"() {
+        given:
+        def budget = new RetryBudget(10_000, { now })
+        budget.select(tests("acme.Test1"), ["acme.Test1": 1_000L], planner, new TestNames())
+        now = 9_500
+        def leftOut = new TestNames()
+
+        when:
+        def selected = budget.select(tests("acme.Test1"), ["acme.Test1": 1_000L], planner, leftOut)
+
+        then:
+        selected.empty
+        leftOut.classNames() == ["acme.Test1"] as Set
+    }
+
+    private static TestNames tests(String... classNames) {
+        def tests = new TestNames()
+        classNames.each { tests.add(it, "test") }
+        tests
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import spock.lang.Specification
+
+class RetryForkPlannerTest extends Specification {
+
+    def "uses no more forks than failed classes"() {
+        given:
+        def planner = new RetryForkPlanner(16, 16)
+        planner.forkStarted(0)
+        (1..3).each { planner.classCompleted("acme.Test$it", 60_000) }
+
+        expect:
+        planner.forks(classes(1..3)) == 3
+    }
+
+    def "uses one fork when classes take less time than starting a fork"() {
+        given:
+        def planner = new RetryForkPlanner(16, 16)
+        planner.forkStarted(2_000)
+        (1..10).each { planner.classCompleted("acme.Test$it", 100) }
+
+        expect:
+        planner.forks(classes(1..10)) == 1
+    }
+
+    def "needs no more forks than the longest class takes to run"() {
+        given:
+        def planner = new RetryForkPlanner(16, 16)
+        planner.forkStarted(100)
+        planner.classCompleted("acme.Test1", 4_000)
+        (2..5).each { planner.classCompleted("acme.Test$it", 1_000) }
+
+        expect:
+        planner.forks(classes(1..5)) == 2
+    }
+
+    def "is bounded by the configured forks and the available cores"() {
+        given:
+        def planner = new RetryForkPlanner(maxParallelForks, cores)
+        planner.forkStarted(0)
+        (1..800).each { planner.classCompleted("acme.Test$it", 1_000) }
+
+        expect:
+        planner.forks(classes(1..800)) == forks
+
+        where:
+        maxParallelForks | cores | forks
+        16               | 8     | 8
+        4                | 8     | 4
+        1                | 8     | 1
+    }
+
+    def "assumes the average duration for classes that have not been measured"() {
+        given:
+        def planner = new RetryForkPlanner(16, 16)
+        planner.forkStarted(0)
+        planner.classCompleted("acme.Test1", 1_000)
+
+        expect:
+        planner.forks(classes(1..4)) == 4
+    }
+
+    def "only the first fork startup is measured"() {
+        given:
+        def planner = new RetryForkPlanner(16, 16)
+        planner.forkStarted(10_000)
+        planner.forkStarted(0)
+        (1..4).each { planner.classCompleted("acme.Test$it", 1_000) }
+
+        expect:
+        planner.forks(classes(1..4)) == 1
+    }
+
+    def "orders measured classes longest first"() {
+        given:
+        def planner = new RetryForkPlanner(16, 16)
+        planner.classCompleted("acme.Test1", 1_000)
+        planner.classCompleted("acme.Test2", 5_000)
+        planner.classCompleted("acme.Test3", 3_000)
+
+        expect:
+        planner.longestFirst(classes(1..4), 10) == ["acme.Test2", "acme.Test3", "acme.Test1"]
+        planner.longestFirst(classes(1..4), 2) == ["acme.Test2", "acme.Test3"]
+    }
+
+    def "forks are not restarted after forkEvery classes if forkEvery is ignored"() {
+        expect:
+        new RetryForkPlanner(4, 4, false).forkEvery(1) == 1
+        new RetryForkPlanner(4, 4, true).forkEvery(1) == 0
+    }
+
+    private static List<String> classes(IntRange range) {
+        range.collect { "acme.Test$it".toString() }
+    }
+}
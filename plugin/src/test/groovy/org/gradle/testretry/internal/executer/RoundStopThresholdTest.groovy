@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import spock.lang.Specification
+
+class RoundStopThresholdTest extends Specification {
+
+    def "is exceeded by the number of failed tests"() {
+        expect:
+        new RoundStopThreshold(3, 0).isExceeded(failed, 1_000) == exceeded
+
+        where:
+        failed | exceeded
+        2      | false
+        3      | true
+    }
+
+    def "is exceeded by the percentage of failed tests once enough tests have completed"() {
+        expect:
+        new RoundStopThreshold(0, 50).isExceeded(failed, completed) == exceeded
+
+        where:
+        failed | completed | exceeded
+        10     | 10        | false
+        9      | 20        | false
+        10     | 20        | true
+        600    | 1_000     | true
+    }
+
+    def "is never exceeded when disabled"() {
+        expect:
+        !RoundStopThreshold.NONE.enabled
+        !RoundStopThreshold.NONE.isExceeded(1_000, 1_000)
+    }
+}
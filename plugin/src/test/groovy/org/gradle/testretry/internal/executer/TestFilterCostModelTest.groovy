@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import spock.lang.Specification
+
+class TestFilterCostModelTest extends Specification {
+
+    def costModel = new TestFilterCostModel()
+
+    def "filters classes that have not been measured by their tests"() {
+        expect:
+        costModel.wholeClasses(["acme.Test1": 10], []).isEmpty()
+    }
+
+    def "filters classes whose tests all failed as a whole"() {
+        given:
+        costModel.classCompleted("acme.Test1", 3, 60_000)
+
+        expect:
+        costModel.wholeClasses(["acme.Test1": 3], []) == ["acme.Test1"] as Set
+    }
+
+    def "filters classes as a whole when running their other tests again costs less than matching patterns"() {
+        given:
+        costModel.classCompleted("acme.Test1", 1_000, 1_000)
+
+        expect:
+        costModel.wholeClasses(["acme.Test1": 990], []) == ["acme.Test1"] as Set
+        costModel.wholeClasses(["acme.Test1": 900], []).isEmpty()
+    }
+
+    def "filters slow classes with few failed tests by their tests"() {
+        given:
+        costModel.classCompleted("acme.Test1", 100, 60_000)
+        costModel.classCompleted("acme.Test2", 5_000, 60_000)
+
+        expect:
+        costModel.wholeClasses(["acme.Test1": 2], ["acme.Test2"]).isEmpty()
+    }
+
+    def "keeps the run of a class with the most tests"() {
+        given:
+        costModel.classCompleted("acme.Test1", 10, 60_000)
+        costModel.classCompleted("acme.Test1", 2, 10_000)
+
+        expect:
+        costModel.wholeClasses(["acme.Test1": 2], []).isEmpty()
+    }
+
+    def "forgets all classes when reset"() {
+        given:
+        costModel.classCompleted("acme.Test1", 2, 1_000)
+        costModel.reset(false)
+
+        expect:
+        costModel.measuring
+        costModel.wholeClasses(["acme.Test1": 2], []).isEmpty()
+    }
+
+    def "never filters classes as a whole when the task filters tests itself"() {
+        given:
+        costModel.reset(true)
+        costModel.classCompleted("acme.Test1", 3, 60_000)
+
+        expect:
+        !costModel.measuring
+        costModel.wholeClasses(["acme.Test1": 3], []).isEmpty()
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class TestHistoryTest extends Specification {
+
+    @Rule
+    TemporaryFolder dir = new TemporaryFolder()
+
+    File file
+
+    def setup() {
+        file = new File(dir.root, "history.bin")
+    }
+
+    def "retries tests without history"() {
+        expect:
+        with(TestHistory.load(file)) {
+            isWorthRetrying("acme.Test", "test", 5, 1)
+            passChance("acme.Test", ["test"] as Set) == 0.5d
+        }
+    }
+
+    def "does not retry tests that never passed on retry when they fail the same way"() {
+        given:
+        builds(3) {
+            it.testCompleted("acme.Test", "test", false, true, 10, 1)
+            it.testCompleted("acme.Test", "test", true, true, 10, 1)
+        }
+
+        expect:
+        with(TestHistory.load(file)) {
+            !isWorthRetrying("acme.Test", "test", 0, 1)
+            isWorthRetrying("acme.Test", "test", 0, 2)
+            isWorthRetrying("acme.Other", "test", 0, 1)
+        }
+    }
+
+    def "retries tests that pass on retry as often as they need"() {
+        given:
+        builds(10) {
+            it.testCompleted("acme.Test", "test", false, true, 10, 1)
+            it.testCompleted("acme.Test", "test", true, false, 10, 0)
+        }
+
+        expect:
+        with(TestHistory.load(file)) {
+            isWorthRetrying("acme.Test", "test", 1, 1)
+            !isWorthRetrying("acme.Test", "test", 2, 1)
+        }
+    }
+
+    def "retries rarely passing tests more often"() {
+        given:
+        builds(10) { history ->
+            history.testCompleted("acme.Test", "test", false, true, 10, 1)
+            (1..3).each { history.testCompleted("acme.Test", "test", true, true, 10, 1) }
+            history.testCompleted("acme.Test", "test", true, false, 10, 0)
+        }
+
+        expect:
+        with(TestHistory.load(file)) {
+            isWorthRetrying("acme.Test", "test", 9, 1)
+            passChance("acme.Test", ["test"] as Set) < 0.5d
+        }
+    }
+
+    def "ranks tests by their chance to pass on retry"() {
+        given:
+        builds(5) {
+            it.testCompleted("acme.Flaky", "test", true, false, 10, 0)
+            it.testCompleted("acme.Broken", "test", true, true, 10, 1)
+        }
+
+        expect:
+        with(TestHistory.load(file)) {
+            passChance("acme.Flaky", ["test"] as Set) > passChance("acme.Unknown", ["test"] as Set)
+            passChance("acme.Unknown", ["test"] as Set) > passChance("acme.Broken", ["test"] as Set)
+            passChance("acme.Unknown", ["test1", "test2"] as Set) < passChance("acme.Unknown", ["test1"] as Set)
+        }
+    }
+
+    def "decides based on earlier builds only"() {
+        given:
+        def history = TestHistory.load(file)
+
+        when:
+        (1..5).each { history.testCompleted("acme.Test", "test", true, true, 10, 1) }
+
+        then:
+        history.isWorthRetrying("acme.Test", "test", 0, 1)
+    }
+
+    def "ignores corrupt history"() {
+        given:
+        builds(3) {
+            it.testCompleted("acme.Test", "test", true, true, 10, 1)
+        }
+        def bytes = file.bytes
+        bytes[bytes.length - 1]++
+        file.bytes = bytes
+
+        expect:
+        TestHistory.load(file).isWorthRetrying("acme.Test", "test", 0, 1)
+    }
+
+    def "keeps the history of tests that did not run"() {
+        given:
+        builds(3) {
+            it.testCompleted("acme.Test", "test", true, true, 10, 1)
+        }
+        builds(1) {
+            it.testCompleted("acme.Other", "test", false, false, 10, 0)
+        }
+
+        expect:
+        !TestHistory.load(file).isWorthRetrying("acme.Test", "test", 0, 1)
+    }
+
+    def "does not record anything without a file"() {
+        when:
+        TestHistory.NONE.testCompleted("acme.Test", "test", true, true, 10, 1)
+        TestHistory.NONE.store()
+
+        then:
+        !TestHistory.NONE.enabled
+        TestHistory.NONE.isWorthRetrying("acme.Test", "test", 0, 1)
+        TestHistory.NONE.passChance("acme.Test", ["test"] as Set) == 1d
+    }
+
+    private void builds(int count, Closure<?> build) {
+        count.times {
+            def history = TestHistory.load(file)
+            build(history)
+            history.store()
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.executer
+
+import spock.lang.Specification
+
+class TestNamesTest extends Specification {
+
+    def testNames = new TestNames()
+
+    def "keeps the tests of a class in an array until there are more than #maxArraySize"() {
+        given:
+        def tests = new TestNames.ClassTests()
+
+        when:
+        (1..maxArraySize).each { tests.add("test$it".toString()) }
+
+        then:
+        tests.@set == null
+        tests.size() == maxArraySize
+        !tests.add("test1")
+
+        when:
+        tests.add("test${maxArraySize + 1}".toString())
+
+        then:
+        tests.@set != null
+        tests.size() == maxArraySize + 1
+        (1..maxArraySize + 1).every { tests.contains("test$it".toString()) }
+        !tests.add("test1")
+
+        where:
+        maxArraySize = TestNames.ClassTests.MAX_ARRAY_SIZE
+    }
+
+    def "removes tests while iterating over #count tests"() {
+        given:
+        def tests = new TestNames.ClassTests()
+        (1..count).each { tests.add("test$it".toString()) }
+
+        when:
+        def iterator = tests.iterator()
+        def visited = []
+        while (iterator.hasNext()) {
+            def test = iterator.next()
+            visited << test
+            if (test.substring(4).toInteger() % 2 == 0) {
+                iterator.remove()
+            }
+        }
+
+        then:
+        visited.toSet() == (1..count).collect { "test$it".toString() }.toSet()
+        tests.size() == (count + 1).intdiv(2)
+        tests.toSet() == (1..count).findAll { it % 2 == 1 }.collect { "test$it".toString() }.toSet()
+
+        where:
+        count << [1, 2, 5, TestNames.ClassTests.MAX_ARRAY_SIZE, 20]
+    }
+
+    def "can't remove a test before iterating or twice"() {
+        given:
+        def tests = new TestNames.ClassTests()
+        tests.add("test1")
+        def iterator = tests.iterator()
+
+        when:
+        iterator.remove()
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        iterator.next()
+        iterator.remove()
+        iterator.remove()
+
+        then:
+        thrown(IllegalStateException)
+        tests.isEmpty()
+    }
+
+    def "counts tests as they are added and removed"() {
+        when:
+        testNames.add("acme.Test1", "a")
+        testNames.add("acme.Test1", "a")
+        testNames.add("acme.Test1", "b")
+        testNames.add("acme.Test2", "a")
+
+        then:
+        testNames.size() == 3
+        testNames.classNames() == ["acme.Test1", "acme.Test2"] as Set
+        testNames.contains("acme.Test1", "b")
+        !testNames.contains("acme.Test2", "b")
+
+        when:
+        def removed = testNames.remove("acme.Test1", "a")
+        def removedAgain = testNames.remove("acme.Test1", "a")
+
+        then:
+        removed
+        !removedAgain
+        testNames.size() == 2
+
+        when:
+        testNames.remove("acme.Test1", "b")
+
+        then:
+        testNames.size() == 1
+        testNames.classNames() == ["acme.Test2"] as Set
+    }
+
+    def "removes the tests of a class that match a predicate"() {
+        given:
+        (1..12).each { testNames.add("acme.Test1", "test$it".toString()) }
+        testNames.add("acme.Test2", "test1")
+
+        when:
+        testNames.remove("acme.Test1") { it.length() > 5 }
+
+        then:
+        testNames.size() == 10
+        !testNames.contains("acme.Test1", "test10")
+        testNames.contains("acme.Test1", "test9")
+
+        when:
+        testNames.remove("acme.Test1") { true }
+
+        then:
+        testNames.size() == 1
+        testNames.classNames() == ["acme.Test2"] as Set
+
+        when:
+        testNames.remove("acme.Other") { true }
+
+        then:
+        testNames.size() == 1
+    }
+
+    def "removes all tests of a class"() {
+        given:
+        testNames.add("acme.Test1", "a")
+        testNames.add("acme.Test1", "b")
+        testNames.add("acme.Test2", "a")
+
+        when:
+        def removed = testNames.remove("acme.Test1")
+
+        then:
+        removed == ["a", "b"] as Set
+        testNames.size() == 1
+        testNames.remove("acme.Test1") == null
+        testNames.size() == 1
+    }
+
+    def "adds all tests of other test names"() {
+        given:
+        testNames.add("acme.Test1", "a")
+        def other = new TestNames()
+        other.add("acme.Test1", "a")
+        other.add("acme.Test1", "b")
+        other.add("acme.Test2", "a")
+
+        when:
+        testNames.addAll(other)
+
+        then:
+        testNames.size() == 3
+        other.size() == 3
+        testNames.contains("acme.Test1", "b")
+        testNames.contains("acme.Test2", "a")
+    }
+
+    def "copies test names without other test names"() {
+        given:
+        (1..10).each { testNames.add("acme.Test1", "test$it".toString()) }
+        testNames.add("acme.Test2", "a")
+        def other = new TestNames()
+        (1..9).each { other.add("acme.Test1", "test$it".toString()) }
+        other.add("acme.Test2", "a")
+        other.add("acme.Test3", "a")
+
+        when:
+        def result = testNames.without(other)
+
+        then:
+        result.size() == 1
+        result.classNames() == ["acme.Test1"] as Set
+        result.contains("acme.Test1", "test10")
+        testNames.size() == 11
+        other.size() == 11
+    }
+
+    def "hands out the tests of each class as read-only views"() {
+        given:
+        testNames.add("acme.Test1", "a")
+        def visited = []
+        testNames.forEach { className, tests -> visited << tests }
+        def streamed = testNames.stream().findFirst().get()
+
+        when:
+        visited[0].add("b")
+
+        then:
+        thrown(UnsupportedOperationException)
+
+        when:
+        streamed.value.remove("a")
+
+        then:
+        thrown(UnsupportedOperationException)
+
+        when:
+        streamed.setValue([] as Set)
+
+        then:
+        thrown(UnsupportedOperationException)
+        testNames.size() == 1
+        testNames.contains("acme.Test1", "a")
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.filter
+
+import org.gradle.internal.serialize.PlaceholderException
+import org.gradle.testretry.internal.testsreader.TestsReader
+import spock.lang.Specification
+
+class FailureFilterTest extends Specification {
+
+    List<String> includeFailures = []
+    List<String> excludeFailures = []
+
+    def "empty filter allows all"() {
+        expect:
+        with(filter()) {
+            empty
+            canRetry(new IOException())
+            canRetry(new AssertionError())
+        }
+    }
+
+    def "must match include pattern"() {
+        when:
+        includeFailures << "java.io.IOException" << "*TimeoutException"
+
+        then:
+        with(filter()) {
+            canRetry(new IOException())
+            canRetry(new java.util.concurrent.TimeoutException())
+            !canRetry(new IllegalStateException())
+        }
+    }
+
+    def "must not match exclude pattern"() {
+        when:
+        excludeFailures << "java.lang.AssertionError"
+
+        then:
+        with(filter()) {
+            !canRetry(new AssertionError())
+            canRetry(new IOException())
+        }
+    }
+
+    def "matches super classes"() {
+        when:
+        includeFailures << "java.io.IOException"
+        excludeFailures << "java.net.SocketTimeoutException"
+
+        then:
+        with(filter()) {
+            canRetry(new java.net.ConnectException())
+            canRetry(new FlakyConnectionException())
+            !canRetry(new java.net.SocketTimeoutException())
+            !canRetry(new RuntimeException())
+        }
+    }
+
+    def "matches causes"() {
+        when:
+        includeFailures << "java.io.IOException"
+
+        then:
+        with(filter()) {
+            canRetry(new RuntimeException(new IllegalStateException(new IOException())))
+            !canRetry(new RuntimeException(new IllegalStateException()))
+        }
+    }
+
+    def "matches message"() {
+        when:
+        includeFailures << "java.lang.IllegalStateException: *Connection refused*"
+
+        then:
+        with(filter()) {
+            canRetry(new IllegalStateException("Connection refused: localhost/127.0.0.1:8080"))
+            canRetry(new IllegalStateException("failed\nConnection refused"))
+            !canRetry(new IllegalStateException("Connection reset"))
+            !canRetry(new IllegalStateException())
+            !canRetry(new IllegalArgumentException("Connection refused"))
+        }
+    }
+
+    def "message rules match super classes"() {
+        when:
+        excludeFailures << "java.lang.RuntimeException:expected*"
+
+        then:
+        with(filter()) {
+            !canRetry(new IllegalStateException("expected 1 but was 2"))
+            canRetry(new IllegalStateException("unexpected"))
+            canRetry(new AssertionError("expected 1 but was 2"))
+        }
+    }
+
+    def "matches original class of placeholder exceptions"() {
+        when:
+        includeFailures << "*FlakyConnectionException"
+
+        then:
+        with(filter()) {
+            canRetry(new PlaceholderException(FlakyConnectionException.name, "flaky", null, "flaky", null, null))
+            !canRetry(new PlaceholderException(IllegalStateException.name, "flaky", null, "flaky", null, null))
+        }
+    }
+
+    def "matches super classes of placeholder exceptions"() {
+        when:
+        includeFailures << "java.io.IOException"
+
+        then:
+        filter().canRetry(new PlaceholderException(FlakyConnectionException.name, "flaky", null, "flaky", null, null))
+    }
+
+    FailureFilter filter() {
+        def testClassesDir = new File(FailureFilterTest.protectionDomain.codeSource.location.toURI())
+        new FailureFilter(new TestsReader([testClassesDir].toSet(), []), includeFailures, excludeFailures)
+    }
+
+    static class FlakyConnectionException extends java.net.ConnectException {
+    }
+}
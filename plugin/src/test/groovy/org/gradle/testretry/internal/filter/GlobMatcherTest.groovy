@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.filter
+
+import spock.lang.Specification
+
+class GlobMatcherTest extends Specification {
+
+    def "matches if any pattern matches"() {
+        expect:
+        with(GlobMatcher.compile(["acme.*Test", "*IntegrationTest", "other.Exact"])) {
+            matches "acme.SomeTest"
+            matches "acme.Test"
+            matches "foo.SomeIntegrationTest"
+            matches "other.Exact"
+            !matches("acme.SomeTestCase")
+            !matches("foo.IntegrationTests")
+            !matches("other.Exact2")
+            !matches("")
+        }
+    }
+
+    def "matches strings with repeated pattern prefixes"() {
+        expect:
+        with(GlobMatcher.compile(["a*ab*b", "*.Test"])) {
+            matches "aabb"
+            matches "aaaaaabab"
+            matches "a.Test.Test"
+            !matches("aab")
+            !matches("aaaaaaaa")
+            !matches("a.Test.Tes")
+        }
+    }
+
+    def "matches non ascii characters"() {
+        expect:
+        with(GlobMatcher.compile(["café.*", "*ü"])) {
+            matches "café.Test"
+            matches "mü"
+            !matches("cafe.Test")
+        }
+    }
+
+    def "empty matcher matches nothing"() {
+        expect:
+        with(GlobMatcher.compile([])) {
+            isEmpty()
+            !matches("")
+            !matches("a")
+        }
+    }
+}
@@ -95,6 +95,29 @@ class RetryFilterTest extends Specification {
         }
     }
 
+    def "decides once per class"() {
+        given:
+        includeAnnotations << "*include*"
+        annotations["include1"] = ["include"]
+        def inspections = 0
+        def filter = new RetryFilter(
+            { inspections++; annotations.getOrDefault(it, []).toSet() },
+            includeClasses,
+            includeAnnotations,
+            excludeClasses,
+            excludeAnnotations
+        )
+
+        when:
+        def verdicts = (1..3).collect { filter.canRetry("include1") } + filter.canRetry("include2")
+
+        then:
+        verdicts == [true, true, true, false]
+        inspections == 2
+        filter.cacheHits == 2
+        filter.cacheMisses == 2
+    }
+
     RetryFilter filter() {
         new RetryFilter(
             { annotations.getOrDefault(it, []).toSet() },
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader
+
+import org.gradle.testretry.internal.filter.AnnotationInspectorImpl
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import spock.lang.Specification
+
+import java.util.function.Supplier
+
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT
+import static org.objectweb.asm.Opcodes.ACC_ANNOTATION
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC
+import static org.objectweb.asm.Opcodes.V1_8
+
+class ClassMetadataVisitorTest extends Specification {
+
+    @Rule
+    TemporaryFolder dir = new TemporaryFolder()
+
+    File testClasses
+
+    def setup() {
+        testClasses = dir.newFolder("test-classes")
+        write("acme/Slow", inheritedAnnotationType("acme/Slow"))
+        write("acme/BaseSpec", testClass("acme/BaseSpec", "java/lang/Object", ["Lacme/Slow;"]) {})
+        write("acme/FlakySpec", testClass("acme/FlakySpec", "acme/BaseSpec", ["Lspock/lang/Stepwise;", "Lacme/Other;"]) { ClassWriter writer ->
+            method(writer, "setUp") { MethodVisitor method ->
+                method.visitAnnotation("Lorg/testng/annotations/BeforeMethod;", true).visitEnd()
+            }
+            method(writer, "first") { MethodVisitor method ->
+                method.visitAnnotation("Lorg/testng/annotations/Test;", true).visitEnd()
+            }
+            method(writer, "second") { MethodVisitor method ->
+                def test = method.visitAnnotation("Lorg/testng/annotations/Test;", true)
+                def dependsOn = test.visitArray("dependsOnMethods")
+                dependsOn.visit(null, "first")
+                dependsOn.visitEnd()
+                test.visitEnd()
+            }
+            method(writer, '$spock_feature_0_0') { MethodVisitor method ->
+                def feature = method.visitAnnotation("Lorg/spockframework/runtime/model/FeatureMetadata;", true)
+                feature.visit("line", 12)
+                feature.visit("name", "does something #param")
+                feature.visit("ordinal", 0)
+                feature.visitEnd()
+            }
+        })
+    }
+
+    def "collects everything about a class in one visit"() {
+        given:
+        def cache = new CountingCache()
+        def reader = new TestsReader([testClasses] as Set, [testClasses], null, cache)
+
+        when:
+        def metadata = reader.readClassMetadata("acme.FlakySpec").get()
+
+        then:
+        metadata.className == "acme.FlakySpec"
+        metadata.superClassName == "acme.BaseSpec"
+        metadata.annotations == ["spock.lang.Stepwise", "acme.Other"] as Set
+        !metadata.inheritedAnnotation
+        metadata.spockStepwise
+        metadata.spockFeatureNames == ["does something #param"]
+        metadata.testNgLifecycleMethods == ["setUp"] as Set
+        metadata.getTestNgDependsOn("second") == ["first"]
+        metadata.getTestNgDependedOn("first") == ["second"]
+        metadata.getTestNgDependsOn("first").empty
+        metadata.getTestNgDependedOn("second").empty
+
+        and:
+        reader.readTestClassDirClassMetadata("acme.FlakySpec").get().is(metadata)
+        cache.loads == 1
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "describes classes without any of the extracted details"() {
+        given:
+        def reader = new TestsReader([testClasses] as Set, [testClasses])
+
+        when:
+        def metadata = reader.readClassMetadata("acme.BaseSpec").get()
+
+        then:
+        metadata.superClassName == "java.lang.Object"
+        metadata.annotations == ["acme.Slow"] as Set
+        !metadata.spockStepwise
+        metadata.spockFeatureNames.empty
+        metadata.testNgLifecycleMethods.empty
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "recognizes inherited annotation types, which subclasses then inherit"() {
+        given:
+        def reader = new TestsReader([testClasses] as Set, [testClasses])
+
+        expect:
+        reader.readClassMetadata("acme.Slow").get().inheritedAnnotation
+        reader.readClassMetadata("acme.Slow").get().annotations == ["java.lang.annotation.Inherited"] as Set
+        new AnnotationInspectorImpl(reader).getClassAnnotations("acme.FlakySpec") == ["acme.Slow", "spock.lang.Stepwise", "acme.Other"] as Set
+
+        cleanup:
+        reader?.close()
+    }
+
+    private void write(String className, byte[] bytes) {
+        def file = new File(testClasses, "${className}.class")
+        file.parentFile.mkdirs()
+        file.bytes = bytes
+    }
+
+    private static byte[] testClass(String className, String superName, List<String> annotations, Closure body) {
+        def writer = new ClassWriter(0)
+        writer.visit(V1_8, ACC_PUBLIC, className, null, superName, null)
+        annotations.each { writer.visitAnnotation(it, true).visitEnd() }
+        body(writer)
+        writer.visitEnd()
+        writer.toByteArray()
+    }
+
+    private static byte[] inheritedAnnotationType(String className) {
+        def writer = new ClassWriter(0)
+        writer.visit(V1_8, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION, className, null, "java/lang/Object", ["java/lang/annotation/Annotation"] as String[])
+        writer.visitAnnotation("Ljava/lang/annotation/Inherited;", true).visitEnd()
+        writer.visitEnd()
+        writer.toByteArray()
+    }
+
+    private static void method(ClassWriter writer, String name, Closure annotate) {
+        def method = writer.visitMethod(ACC_PUBLIC, name, "()V", null, null)
+        annotate(method)
+        method.visitEnd()
+    }
+
+    static final class CountingCache implements ClassMetadataCache {
+
+        int loads
+
+        @Override
+        ClassMetadata get(ClassFileKey key, Supplier<ClassMetadata> loader) {
+            loads++
+            loader.get()
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader
+
+import spock.lang.Specification
+
+class LruClassMetadataCacheTest extends Specification {
+
+    def "loads each key once"() {
+        given:
+        def cache = new LruClassMetadataCache(Long.MAX_VALUE)
+        def loads = 0
+        def key = new ClassFileKey("/classes/acme/SomeTest.class", 100, 1)
+
+        when:
+        def first = cache.get(key) { loads++; new ClassMetadata("acme.SomeTest") }
+        def second = cache.get(key) { loads++; new ClassMetadata("acme.SomeTest") }
+
+        then:
+        first.is(second)
+        loads == 1
+    }
+
+    def "changed class files are loaded again"() {
+        given:
+        def cache = new LruClassMetadataCache(Long.MAX_VALUE)
+
+        when:
+        def first = cache.get(new ClassFileKey("/classes/acme/SomeTest.class", 100, 1)) { new ClassMetadata("acme.SomeTest") }
+        def second = cache.get(new ClassFileKey("/classes/acme/SomeTest.class", 100, 2)) { new ClassMetadata("acme.SomeTest") }
+
+        then:
+        !first.is(second)
+    }
+
+    def "evicts least recently used entries beyond the budget"() {
+        given:
+        def cache = new LruClassMetadataCache(Long.MAX_VALUE)
+        def keys = (1..3).collect { new ClassFileKey("/classes/acme/Test${it}.class", 100, 1) }
+        keys.each { key -> cache.get(key) { new ClassMetadata("acme.Test") } }
+        def entrySize = cache.sizeBytes / 3
+
+        when:
+        cache.get(keys[0]) { throw new IllegalStateException("should be cached") }
+        cache.maxSizeBytes = (long) (2 * entrySize)
+
+        then:
+        cache.size() == 2
+        cache.get(keys[0]) { throw new IllegalStateException("should be cached") }
+        cache.get(keys[2]) { throw new IllegalStateException("should be cached") }
+
+        when:
+        def reloaded = false
+        cache.get(keys[1]) { reloaded = true; new ClassMetadata("acme.Test") }
+
+        then:
+        reloaded
+        cache.size() == 2
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.testsreader
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class TestsReaderTest extends Specification {
+
+    @Rule
+    TemporaryFolder dir = new TemporaryFolder()
+
+    def "finds classes in test classes dirs and on the classpath"() {
+        given:
+        def testClasses = dir.newFolder("test-classes")
+        classFile(testClasses, "acme/SomeTest", "acme/Base")
+        def mainClasses = dir.newFolder("main-classes")
+        classFile(mainClasses, "acme/Base", "java/lang/Object")
+        def jar = jar("lib.jar", "lib/Library": "java/lang/Object", "acme/SomeTest": "lib/Library")
+
+        when:
+        def reader = new TestsReader([testClasses].toSet(), [testClasses, mainClasses, jar])
+
+        then:
+        reader.readTestClassDirClass("acme.SomeTest", SuperClassVisitor::new) == Optional.of("acme/Base")
+        !reader.readTestClassDirClass("acme.Base", SuperClassVisitor::new).present
+        reader.readClass("acme.Base", SuperClassVisitor::new) == Optional.of("java/lang/Object")
+        reader.readClass("lib.Library", SuperClassVisitor::new) == Optional.of("java/lang/Object")
+        !reader.readClass("lib.Missing", SuperClassVisitor::new).present
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "first classpath entry wins and index is rebuilt after close"() {
+        given:
+        def first = jar("first.jar", "acme/Shadowed": "acme/First")
+        def second = jar("second.jar", "acme/Shadowed": "acme/Second")
+        def reader = new TestsReader([] as Set, [first, second])
+
+        expect:
+        reader.readClass("acme.Shadowed", SuperClassVisitor::new) == Optional.of("acme/First")
+
+        when:
+        reader.close()
+
+        then:
+        reader.readClass("acme.Shadowed", SuperClassVisitor::new) == Optional.of("acme/First")
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "persists jar entries between readers and picks up changed jars"() {
+        given:
+        def indexFile = new File(dir.root, "index/classpath.idx")
+        def lib = jar("lib.jar", "lib/Old": "java/lang/Object")
+        def reader = new TestsReader([] as Set, [lib], indexFile, null)
+
+        expect:
+        reader.readClass("lib.Old", SuperClassVisitor::new).present
+        indexFile.file
+
+        when:
+        reader.close()
+        lib.delete()
+        jar("lib.jar", "lib/New": "java/lang/Object")
+        lib.lastModified = lib.lastModified() + 2000
+        reader = new TestsReader([] as Set, [lib], indexFile, null)
+
+        then:
+        !reader.readClass("lib.Old", SuperClassVisitor::new).present
+        reader.readClass("lib.New", SuperClassVisitor::new).present
+
+        when:
+        reader.close()
+        reader = new TestsReader([] as Set, [lib], indexFile, null)
+
+        then:
+        reader.readClass("lib.New", SuperClassVisitor::new).present
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "ignores corrupt index file"() {
+        given:
+        def indexFile = dir.newFile("classpath.idx")
+        indexFile.bytes = [0x54, 0x52, 0x43, 0x49, 0, 0, 0, 1, 0, 0, 0, 5, 1, 2] as byte[]
+        def lib = jar("lib.jar", "lib/Library": "java/lang/Object")
+        def reader = new TestsReader([] as Set, [lib], indexFile, null)
+
+        expect:
+        reader.readClass("lib.Library", SuperClassVisitor::new).present
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "does not rewrite an index that holds all the jars that fit"() {
+        given:
+        def indexFile = new File(dir.root, "classpath.idx")
+        def first = jar("first.jar", "a/A": "java/lang/Object")
+        def second = jar("second.jar", "b/B": "java/lang/Object")
+        // header, then the record of the first jar only
+        def store = new ClasspathIndexStore(indexFile, 12 + 36 + first.absolutePath.bytes.length + 2 + "a/A.class".length())
+        def jars = [
+            new ClasspathIndexStore.Jar(first, first.length(), first.lastModified(), ["a/A.class"]),
+            new ClasspathIndexStore.Jar(second, second.length(), second.lastModified(), ["b/B.class"])
+        ]
+
+        when:
+        store.update(store.load(), jars)
+        indexFile.lastModified = 1000
+        def stored = store.load()
+
+        then:
+        stored.size() == 1
+        stored.entries(first, first.length(), first.lastModified()) == ["a/A.class"]
+        stored.entries(second, second.length(), second.lastModified()) == null
+
+        when:
+        store.update(stored, jars)
+
+        then:
+        indexFile.lastModified() == 1000
+
+        when:
+        stored = store.load()
+        stored.entries(second, second.length(), second.lastModified())
+        store.update(stored, jars.reverse())
+
+        then:
+        indexFile.lastModified() != 1000
+    }
+
+    def "treats classes of jars that can't be read as not found"() {
+        given:
+        def indexFile = new File(dir.root, "index/classpath.idx")
+        def lib = jar("lib.jar", "lib/Library": "java/lang/Object")
+        def reader = new TestsReader([] as Set, [lib], indexFile, null)
+        reader.readClass("lib.Library", SuperClassVisitor::new)
+        reader.close()
+
+        when:
+        // rewritten in place, so that the persisted entries still appear to be up to date
+        def lastModified = lib.lastModified()
+        lib.bytes = new byte[lib.length()]
+        lib.lastModified = lastModified
+        reader = new TestsReader([] as Set, [lib], indexFile, null)
+
+        then:
+        !reader.readClass("lib.Library", SuperClassVisitor::new).present
+        !reader.readClassMetadata("lib.Library").present
+
+        cleanup:
+        reader?.close()
+    }
+
+    private File jar(Map<String, String> classes, String name) {
+        def file = new File(dir.root, name)
+        new JarOutputStream(new FileOutputStream(file)).withCloseable { out ->
+            classes.each { className, superName ->
+                out.putNextEntry(new JarEntry("${className}.class"))
+                out.write(classBytes(className, superName))
+                out.closeEntry()
+            }
+        }
+        file
+    }
+
+    private static void classFile(File root, String className, String superName) {
+        def file = new File(root, "${className}.class")
+        file.parentFile.mkdirs()
+        file.bytes = classBytes(className, superName)
+    }
+
+    private static byte[] classBytes(String className, String superName) {
+        def writer = new ClassWriter(0)
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, superName, null)
+        writer.visitEnd()
+        writer.toByteArray()
+    }
+
+    static final class SuperClassVisitor extends TestsReader.Visitor<String> {
+
+        private String superName
+
+        @Override
+        String getResult() {
+            superName
+        }
+
+        @Override
+        void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.superName = superName
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.testretry.internal.worker
+
+import org.gradle.internal.serialize.PlaceholderException
+import org.gradle.testretry.internal.filter.AnnotationInspectorImpl
+import org.gradle.testretry.internal.filter.FailureFilter
+import org.gradle.testretry.internal.filter.RetryFilter
+import org.gradle.testretry.internal.testsreader.TestsReader
+import spock.lang.Specification
+
+import java.lang.annotation.Inherited
+import java.lang.annotation.Retention
+import java.lang.annotation.RetentionPolicy
+
+class WorkerRetryConfigTest extends Specification {
+
+    static final List<Class<?>> TEST_CLASSES = [FlakyTest, FlakyChildTest, SlowTest, SlowChildTest, PlainTest]
+
+    static final Throwable CONNECTION_REFUSED = new java.net.ConnectException("Connection refused")
+    static final Throwable CONNECTION_RESET = new java.net.SocketException("Connection reset")
+    static final Throwable LINE_BREAKS = new IllegalStateException("first\nsecond")
+    static final Throwable ASSERTION = new AssertionError("expected 1 but was 2")
+    static final Throwable FLAKY_CONNECTION = new FlakyConnectionException("Connection refused")
+    static final Throwable WRAPPED = new RuntimeException("setup failed", new FlakyConnectionException("Connection reset"))
+    static final List<Throwable> FAILURES = [CONNECTION_REFUSED, CONNECTION_RESET, LINE_BREAKS, ASSERTION, FLAKY_CONNECTION, WRAPPED]
+
+    List<String> includeClasses = []
+    List<String> includeAnnotations = []
+    List<String> excludeClasses = []
+    List<String> excludeAnnotations = []
+    List<String> includeFailures = []
+    List<String> excludeFailures = []
+
+    def "retries the same test classes as the plugin"() {
+        given:
+        this.includeClasses = includeClasses
+        this.includeAnnotations = includeAnnotations
+        this.excludeClasses = excludeClasses
+        this.excludeAnnotations = excludeAnnotations
+
+        when:
+        def config = config()
+        def filter = retryFilter()
+
+        then:
+        TEST_CLASSES.findAll { config.canRetry(it) } == retried
+        TEST_CLASSES.findAll { filter.canRetry(it.name) } == retried
+
+        where:
+        includeClasses     | includeAnnotations | excludeClasses    | excludeAnnotations      | retried
+        []                 | []                 | []                | []                      | TEST_CLASSES
+        ["*Flaky*"]        | []                 | []                | []                      | [FlakyTest, FlakyChildTest]
+        []                 | []                 | ["*Child*"]       | []                      | [FlakyTest, SlowTest, PlainTest]
+        []                 | ['*$Flaky']        | []                | []                      | [FlakyTest, FlakyChildTest]
+        []                 | ['*$Slow']         | []                | []                      | [SlowTest]
+        []                 | []                 | []                | ['*$Flaky', '*$Slow']   | [SlowChildTest, PlainTest]
+        ["*Test"]          | ['*$Flaky']        | ["*Child*"]       | []                      | [FlakyTest]
+        ["*Flaky*\n*Slow"] | []                 | []                | []                      | []
+    }
+
+    def "retries the same failures as the plugin"() {
+        given:
+        this.includeFailures = includeFailures
+        this.excludeFailures = excludeFailures
+
+        when:
+        def config = config()
+        def filter = new FailureFilter(testsReader(), includeFailures, excludeFailures)
+
+        then:
+        FAILURES.findAll { config.canRetry(it) } == retried
+        FAILURES.findAll { filter.canRetry(it) } == retried
+        FAILURES.findAll { filter.canRetry(placeholder(it)) } == retried
+
+        where:
+        includeFailures                                          | excludeFailures                       | retried
+        []                                                       | []                                    | FAILURES
+        ["java.io.IOException"]                                  | []                                    | [CONNECTION_REFUSED, CONNECTION_RESET, FLAKY_CONNECTION, WRAPPED]
+        ['*$FlakyConnectionException']                           | []                                    | [FLAKY_CONNECTION, WRAPPED]
+        []                                                       | ["*Exception:*refused*"]              | [CONNECTION_RESET, LINE_BREAKS, ASSERTION, WRAPPED]
+        []                                                       | ["java.net.ConnectException: *reset"] | [CONNECTION_REFUSED, CONNECTION_RESET, LINE_BREAKS, ASSERTION, FLAKY_CONNECTION]
+        ["java.lang.Error", "java.lang.RuntimeException:setup*"] | []                                    | [ASSERTION, WRAPPED]
+        ["java.lang.IllegalStateException: first\n*"]            | []                                    | [LINE_BREAKS]
+        ["java.lang.IllegalStateException: first"]               | []                                    | []
+    }
+
+    // how the build reports exceptions of the test worker that it can't load
+    static Throwable placeholder(Throwable failure) {
+        failure == null ? null : new PlaceholderException(failure.class.name, failure.message, null, failure.toString(), null, placeholder(failure.cause))
+    }
+
+    WorkerRetryConfig config() {
+        def out = new ByteArrayOutputStream()
+        WorkerRetryConfig.write(out, 1, 0, includeClasses, includeAnnotations, excludeClasses, excludeAnnotations, includeFailures, excludeFailures)
+        WorkerRetryConfig.read(new ByteArrayInputStream(out.toByteArray()))
+    }
+
+    RetryFilter retryFilter() {
+        new RetryFilter(new AnnotationInspectorImpl(testsReader()), includeClasses, includeAnnotations, excludeClasses, excludeAnnotations)
+    }
+
+    static TestsReader testsReader() {
+        def testClassesDir = new File(WorkerRetryConfigTest.protectionDomain.codeSource.location.toURI())
+        new TestsReader([testClassesDir].toSet(), [])
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Inherited
+    @interface Flaky {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Slow {
+    }
+
+    @Flaky
+    static class FlakyTest {
+    }
+
+    static class FlakyChildTest extends FlakyTest {
+    }
+
+    @Slow
+    static class SlowTest {
+    }
+
+    static class SlowChildTest extends SlowTest {
+    }
+
+    static class PlainTest {
+    }
+
+    static class FlakyConnectionException extends java.net.ConnectException {
+        FlakyConnectionException(String message) {
+            super(message)
+        }
+    }
+}
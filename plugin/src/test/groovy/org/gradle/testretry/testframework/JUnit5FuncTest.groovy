@@ -211,6 +211,53 @@ class JUnit5FuncTest extends AbstractFrameworkFuncTest {
         gradleVersion << GRADLE_VERSIONS_UNDER_TEST
     }
 
+    def "can rerun on failure in nested class (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry.maxRetries = 1
+        """
+
+        writeTestSource """
+            package acme;
+
+            class FlakyTests {
+                @org.junit.jupiter.api.Test
+                void outer() {
+                }
+
+                @org.junit.jupiter.api.Nested
+                class NestedTests {
+                    @org.junit.jupiter.api.Test
+                    void nested() {
+                        ${flakyAssert()}
+                    }
+                }
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            class OtherTests {
+                @org.junit.jupiter.api.Test
+                void other() {
+                }
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion).build()
+
+        then:
+        result.output.count('nested() FAILED') == 1
+        result.output.count('nested() PASSED') == 1
+        result.output.count('outer() PASSED') == 1
+        result.output.count('other() PASSED') == 1
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
     def "handles parameterized tests (gradle version #gradleVersion)"() {
         given:
         buildFile << """
@@ -400,6 +400,72 @@ class TestNGFuncTest extends AbstractFrameworkFuncTest {
         gradleVersion << GRADLE_VERSIONS_UNDER_TEST
     }
 
+    def "can retry failed tests in the test worker (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 1
+                retryInWorker = true
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            public class FlakyTests {
+                @org.testng.annotations.Test
+                public void flaky() {
+                    ${flakyAssert()}
+                }
+
+                @org.testng.annotations.Test
+                public void successTest() {}
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion as String).build()
+
+        then: 'the failed attempt is reported as skipped, and the tests run once'
+        result.output.count('flaky SKIPPED') == 1
+        result.output.count('flaky PASSED') == 1
+        result.output.count('successTest PASSED') == 1
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
+    def "fails when tests still fail after retrying in the test worker (gradle version #gradleVersion)"() {
+        given:
+        buildFile << """
+            test.retry {
+                maxRetries = 2
+                retryInWorker = true
+            }
+        """
+
+        writeTestSource """
+            package acme;
+
+            public class FailingTests {
+                @org.testng.annotations.Test
+                public void failing() {
+                    throw new RuntimeException("fail me!");
+                }
+            }
+        """
+
+        when:
+        def result = gradleRunner(gradleVersion as String).buildAndFail()
+
+        then: 'the test is not retried again after the test execution'
+        result.output.count('failing SKIPPED') == 2
+        result.output.count('failing FAILED') == 1
+
+        where:
+        gradleVersion << GRADLE_VERSIONS_UNDER_TEST
+    }
+
     @Override
     protected String buildConfiguration() {
         return """